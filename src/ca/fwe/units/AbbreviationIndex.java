@@ -0,0 +1,91 @@
+package ca.fwe.units;
+
+/**
+ * An open-addressing hash table from BaseUnit abbreviation to BaseUnit that can be searched with a range of characters, so that
+ * decoding a Unit does not create a String for each abbreviation. Where abbreviations are repeated, the first BaseUnit in the
+ * array wins, as it did when the array was searched in order.
+ *
+ * @author Dewey Dunnington
+ *
+ */
+class AbbreviationIndex {
+
+	private static volatile AbbreviationIndex registered ;
+
+	private final BaseUnit[] source ;
+	private final String[] keys ;
+	private final BaseUnit[] units ;
+	private final int mask ;
+
+	/**
+	 * @param array the units to index.
+	 */
+	AbbreviationIndex(BaseUnit[] array) {
+		source = array ;
+		int capacity = 16 ;
+		while(capacity < array.length * 2)
+			capacity <<= 1 ;
+		keys = new String[capacity] ;
+		units = new BaseUnit[capacity] ;
+		mask = capacity - 1 ;
+		for(int i=0; i<array.length; i++) {
+			String key = array[i].getAbbreviation() ;
+			int slot = hash(key, 0, key.length()) & mask ;
+			while(keys[slot] != null && !keys[slot].equals(key))
+				slot = (slot + 1) & mask ;
+			if(keys[slot] == null) {
+				keys[slot] = key ;
+				units[slot] = array[i] ;
+			}
+		}
+	}
+
+	/**
+	 * @return an index of BaseUnit.getRegistered(), rebuilt if units have been registered since it was last built.
+	 */
+	static AbbreviationIndex getRegistered() {
+		BaseUnit[] units = BaseUnit.getRegistered() ;
+		AbbreviationIndex index = registered ;
+		if(index == null || index.source != units) {
+			index = new AbbreviationIndex(units) ;
+			registered = index ;
+		}
+		return index ;
+	}
+
+	/**
+	 * @param chars
+	 * @param from first character of the abbreviation, inclusive.
+	 * @param to last character of the abbreviation, exclusive.
+	 * @return the BaseUnit with that abbreviation, null if there is none.
+	 */
+	BaseUnit get(CharSequence chars, int from, int to) {
+		int slot = hash(chars, from, to) & mask ;
+		String key ;
+		while((key = keys[slot]) != null) {
+			if(matches(key, chars, from, to))
+				return units[slot] ;
+			slot = (slot + 1) & mask ;
+		}
+		return null ;
+	}
+
+	private static boolean matches(String key, CharSequence chars, int from, int to) {
+		if(key.length() != to - from)
+			return false ;
+		for(int i=0; i<key.length(); i++) {
+			if(key.charAt(i) != chars.charAt(from + i))
+				return false ;
+		}
+		return true ;
+	}
+
+	private static int hash(CharSequence chars, int from, int to) {
+		int h = 0 ;
+		for(int i=from; i<to; i++) {
+			h = 31 * h + chars.charAt(i) ;
+		}
+		return h ^ (h >>> 16) ;
+	}
+
+}
@@ -1,5 +1,9 @@
 package ca.fwe.units;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * @author Dewey Dunnington
  * 
@@ -58,7 +62,7 @@ public class BaseUnit {
 	//Temperature
 	public static final BaseUnit KELVIN = new BaseUnit(Dimension.TEMPERATURE, "kelvin", "K", 1.0) ;
 	public static final BaseUnit DEGREES_CELCIUS = new BaseUnit(Dimension.TEMPERATURE, "degrees Celcius", "deg_C", 1, 273.15) ;
-	public static final BaseUnit DEGREES_FARENHEIGHT = new BaseUnit(Dimension.TEMPERATURE, "degrees Farenheight", "deg_F", 1.8, 459.67) ;
+	public static final BaseUnit DEGREES_FARENHEIGHT = new BaseUnit(Dimension.TEMPERATURE, "degrees Farenheight", "deg_F", 1.0 / 1.8, 459.67) ;
 
 	//luminous intensity
 	public static final BaseUnit CANDELA = new BaseUnit(Dimension.LUMINOUS_INTENSITY, "candella", "can", 1.0) ;
@@ -94,12 +98,51 @@ public class BaseUnit {
 		DEGREES_CELCIUS, DEGREES_FARENHEIGHT, CANDELA, MOLE, MILLIMOLE, RADIAN, REVOLUTION, DEGREE, GRADIAN, 
 		DOLLAR, BYTE, BIT, KILOBYTE, MEGABYTE, GIGABYTE} ;
 
+	/**
+	 * ALL followed by any BaseUnits added with register(). Replaced, never modified, when a unit is registered so that readers
+	 * need no lock.
+	 */
+	private static volatile BaseUnit[] registered = ALL ;
+
+	/**
+	 * Makes a BaseUnit available to Unit.valueOf(String), Unit.parse() and Unit.getSIUnit(), e.g. a unit of one of the
+	 * Dimension.TYPE_USER dimensions. Safe to call from any thread.
+	 * 
+	 * @param unit the unit to add.
+	 * @throws IllegalArgumentException if a registered BaseUnit already has the same abbreviation.
+	 */
+	public static synchronized void register(BaseUnit unit) {
+		BaseUnit[] current = registered ;
+		for(int i=0; i<current.length; i++) {
+			if(current[i].getAbbreviation().equals(unit.getAbbreviation()))
+				throw new IllegalArgumentException("A BaseUnit with abbreviation " + unit.getAbbreviation() + " is already registered") ;
+		}
+		BaseUnit[] grown = Arrays.copyOf(current, current.length + 1) ;
+		grown[current.length] = unit ;
+		registered = grown ;
+	}
+
+	/**
+	 * @return an unmodifiable snapshot of ALL and any BaseUnits added with register().
+	 */
+	public static List<BaseUnit> getAll() {
+		return Collections.unmodifiableList(Arrays.asList(registered)) ;
+	}
+
+	/**
+	 * @return the registered units. The array is shared and must not be modified.
+	 */
+	static BaseUnit[] getRegistered() {
+		return registered ;
+	}
+
 	/**
 	 * @param base dimension associated with this BaseUnit
 	 * @param name long form name
 	 * @param abbreviation unique abbreviation for the BaseUnit. Must be unique, as it is used to store units.
 	 * @param ratio ratio between the SI unit and this unit (i.e. what you would multiply a value in this unit to get the value in SI units)
-	 * @param offset used to accommodate degrees celcius and farenheight, but not implemented in the Unit class.
+	 * @param offset value added to a value in this unit before multiplying by ratio to get the SI value (e.g. 273.15 for degrees
+	 * Celcius). Only applied by a Unit made of this BaseUnit alone.
 	 */
 	public BaseUnit(Dimension base, String name, String abbreviation, double ratio, double offset) {
 		baseUnit = base ;
@@ -132,7 +175,8 @@ public class BaseUnit {
 	public boolean equals(Object otherObject) {
 		if(otherObject instanceof BaseUnit) {
 			BaseUnit otherUnit = (BaseUnit)otherObject ;
-			if(this.baseUnitRatio == otherUnit.getBaseUnitRatio() && this.getUnitType() == otherUnit.getUnitType()) {
+			if(this.baseUnitRatio == otherUnit.getBaseUnitRatio() && this.baseUnitOffset == otherUnit.getBaseUnitOffset() &&
+					this.getUnitType() == otherUnit.getUnitType()) {
 				return true ;
 			} else {
 				return false ;
@@ -142,6 +186,12 @@ public class BaseUnit {
 		}
 	}
 
+	public int hashCode() {
+		long bits = baseUnitRatio == 0 ? 0 : Double.doubleToLongBits(baseUnitRatio) ;
+		long offsetBits = baseUnitOffset == 0 ? 0 : Double.doubleToLongBits(baseUnitOffset) ;
+		return 31 * (31 * (int)(bits ^ (bits >>> 32)) + (int)(offsetBits ^ (offsetBits >>> 32))) + this.getUnitType() ;
+	}
+
 	/**
 	 * @return the BaseUnit long name.
 	 */
@@ -181,6 +231,13 @@ public class BaseUnit {
 		return baseUnit.getDimensionType() ;
 	}
 
+	/**
+	 * @return the position of this unit's dimension in a Unit exponent vector, -1 if this unit is dimensionless.
+	 */
+	int getDimensionIndex() {
+		return baseUnit.getIndex() ;
+	}
+
 	/**
 	 * @author Dewey Dunnington
 	 * 
@@ -208,6 +265,18 @@ public class BaseUnit {
 		public static final int TYPE_USER5 = 113 ;
 		public static final int TYPE_USER6 = 127 ;
 
+		/**
+		 * Dimension types in the order they are stored in a Unit exponent vector. TYPE_NO_UNIT has no entry.
+		 */
+		static final int[] TYPES = {TYPE_LENGTH, TYPE_MASS, TYPE_TIME, TYPE_ELECTRIC_CURRENT, TYPE_TEMPERATURE,
+			TYPE_LUMINOUS_INTENSITY, TYPE_AMOUNT_OF_SUBSTANCE, TYPE_ANGLE, TYPE_CURRENCY, TYPE_DATA_STORAGE,
+			TYPE_USER1, TYPE_USER2, TYPE_USER3, TYPE_USER4, TYPE_USER5, TYPE_USER6} ;
+
+		/**
+		 * The number of dimensions a Unit can carry an exponent for.
+		 */
+		static final int COUNT = TYPES.length ;
+
 		public static final Dimension UNITLESS = new Dimension(TYPE_NO_UNIT) ;
 		public static final Dimension LENGTH = new Dimension(TYPE_LENGTH) ;
 		public static final Dimension MASS = new Dimension(TYPE_MASS) ;
@@ -222,9 +291,15 @@ public class BaseUnit {
 
 
 		private int unitType ;
+		private int index ;
 
+		/**
+		 * @param type one of the TYPE_ constants in this class.
+		 * @throws IllegalArgumentException if type is not one of the TYPE_ constants.
+		 */
 		public Dimension(int type) {
 			this.unitType = type ;
+			this.index = indexOf(type) ;
 		}
 
 		/**
@@ -233,6 +308,23 @@ public class BaseUnit {
 		public int getDimensionType() {
 			return unitType;
 		}
+
+		/**
+		 * @return the position of this dimension in a Unit exponent vector, -1 for the unitless dimension.
+		 */
+		int getIndex() {
+			return index ;
+		}
+
+		private static int indexOf(int type) {
+			if(type == TYPE_NO_UNIT)
+				return -1 ;
+			for(int i=0; i<TYPES.length; i++) {
+				if(TYPES[i] == type)
+					return i ;
+			}
+			throw new IllegalArgumentException("Unknown dimension type " + type) ;
+		}
 	}
 
 }
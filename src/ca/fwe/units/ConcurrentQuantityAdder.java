@@ -0,0 +1,248 @@
+package ca.fwe.units;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * A running total of values of one dimension that many threads can add to without locking. Values are converted to SI values and
+ * added to a shared base with compare-and-set; once threads start to collide, the total is split over a table of cells, each on
+ * its own cache line, and each thread adds to the cell its probe selects, moving to another cell whenever it collides again. The
+ * table doubles on collisions up to the number of processors, so adding scales with the number of writing threads. Reading adds
+ * the base and cells with Neumaier's compensated summation.
+ * <p>
+ * Each add is a single compare-and-set on one cell, so a sum read while threads are adding includes every add that completed
+ * before the read began, each concurrent add either wholly or not at all, and no part of an add twice. The conversion to SI of
+ * the last unit added in is remembered, so adding a run of values in the same unit checks its dimensions once.
+ * <p>
+ * As in Number.add(), values in units with an offset (such as degrees Celcius) are added as differences, and the sum is
+ * described as an absolute value in the unit asked for, so the sum of 20 and 10 degrees Celcius is 30 degrees Celcius.
+ *
+ * @author Dewey Dunnington
+ *
+ */
+public class ConcurrentQuantityAdder {
+
+	private static final int MAX_CELLS = cellCount(Runtime.getRuntime().availableProcessors()) ;
+
+	private static final AtomicInteger probeSeed = new AtomicInteger() ;
+	private static final ThreadLocal<int[]> probes = new ThreadLocal<int[]>() {
+		protected int[] initialValue() {
+			int h = probeSeed.addAndGet(0x9E3779B9) ;
+			return new int[] {h == 0 ? 1 : h} ;
+		}
+	} ;
+
+	private final Unit unit ;
+	private final long dimensionKey ;
+	private volatile Conversion last ;
+
+	private final AtomicLong base = new AtomicLong(Double.doubleToRawLongBits(0.0)) ;
+	private volatile Cell[] cells ;
+
+	/**
+	 * @param unit the unit sums are described in by default; values added must be of the same dimensions.
+	 */
+	public ConcurrentQuantityAdder(Unit unit) {
+		this.unit = unit ;
+		this.dimensionKey = unit.getDimensionKey() ;
+		this.last = new Conversion(unit) ;
+	}
+
+	/**
+	 * @return the unit sums are described in by default.
+	 */
+	public Unit getUnit() {
+		return unit ;
+	}
+
+	/**
+	 * @param number
+	 * @throws UnitException if number is not in the dimensions of this adder.
+	 */
+	public void add(Number number) throws UnitException {
+		checkDimensions(number.getUnit()) ;
+		addSI(number.getSIValue() - number.getUnit().getOffset()) ;
+	}
+
+	/**
+	 * @param quantity
+	 * @throws UnitException if quantity is not in the dimensions of this adder.
+	 */
+	public void add(Quantity quantity) throws UnitException {
+		checkDimensions(quantity.getUnit()) ;
+		addSI(quantity.getSIValue() - quantity.getUnit().getOffset()) ;
+	}
+
+	/**
+	 * @param value
+	 * @param valueUnit the unit value is described in.
+	 * @throws UnitException if valueUnit is not in the dimensions of this adder.
+	 */
+	public void add(double value, Unit valueUnit) throws UnitException {
+		Conversion c = last ;
+		if(c.unit != valueUnit) {
+			checkDimensions(valueUnit) ;
+			c = new Conversion(valueUnit) ;
+			last = c ;
+		}
+		addSI(value * c.factor) ;
+	}
+
+	/**
+	 * Adds a value in SI units of the dimensions of this adder.
+	 *
+	 * @param siValue
+	 */
+	public void addSI(double siValue) {
+		Cell[] cs = cells ;
+		if(cs == null) {
+			long b = base.get() ;
+			if(base.compareAndSet(b, plus(b, siValue)))
+				return ;
+			cs = expand(null) ;
+		}
+		int[] probe = probes.get() ;
+		int h = probe[0] ;
+		while(true) {
+			Cell c = cs[h & (cs.length - 1)] ;
+			long v = c.value ;
+			if(c.compareAndSet(v, plus(v, siValue))) {
+				probe[0] = h ;
+				return ;
+			}
+			//collided: move this thread to another cell, and spread threads over more cells if there is room
+			h ^= h << 13 ;
+			h ^= h >>> 17 ;
+			h ^= h << 5 ;
+			cs = cs.length < MAX_CELLS ? expand(cs) : cells ;
+		}
+	}
+
+	/**
+	 * @return the compensated sum of the values added, in SI units. Values in units with an offset are added as differences.
+	 */
+	public double getSISum() {
+		return total(false) ;
+	}
+
+	/**
+	 * @return the sum of the values added, in getUnit().
+	 */
+	public Number getSum() {
+		return new Number(getSISum() + unit.getOffset(), unit, true) ;
+	}
+
+	/**
+	 * @param resultUnit
+	 * @return the sum of the values added, in resultUnit.
+	 * @throws UnitException if resultUnit is not in the dimensions of this adder.
+	 */
+	public Number getSum(Unit resultUnit) throws UnitException {
+		checkDimensions(resultUnit) ;
+		return new Number(getSISum() + resultUnit.getOffset(), resultUnit, true) ;
+	}
+
+	/**
+	 * Returns the sum and sets the total to zero. Each add is counted in exactly one of the sums returned by successive calls,
+	 * even while other threads are adding.
+	 *
+	 * @return the sum of the values added since the last reset, in getUnit().
+	 */
+	public Number getSumThenReset() {
+		return new Number(total(true) + unit.getOffset(), unit, true) ;
+	}
+
+	/**
+	 * Adds the base and cells with Neumaier's compensated summation, optionally setting each to zero as it is read.
+	 */
+	private double total(boolean reset) {
+		long zero = Double.doubleToRawLongBits(0.0) ;
+		double sum = Double.longBitsToDouble(reset ? base.getAndSet(zero) : base.get()) ;
+		double compensation = 0 ;
+		Cell[] cs = cells ;
+		if(cs != null) {
+			for(Cell c: cs) {
+				double value = Double.longBitsToDouble(reset ? c.getAndReset() : c.value) ;
+				double t = sum + value ;
+				if(Math.abs(sum) >= Math.abs(value))
+					compensation += (sum - t) + value ;
+				else
+					compensation += (value - t) + sum ;
+				sum = t ;
+			}
+		}
+		return sum + compensation ;
+	}
+
+	/**
+	 * @return the table of cells, grown from current to twice its size (or created if current is null) unless another thread
+	 * has already replaced it.
+	 */
+	private synchronized Cell[] expand(Cell[] current) {
+		Cell[] cs = cells ;
+		if(cs != current || (cs != null && cs.length >= MAX_CELLS))
+			return cs ;
+		Cell[] grown = new Cell[cs == null ? 2 : cs.length * 2] ;
+		int kept = cs == null ? 0 : cs.length ;
+		if(kept > 0)
+			System.arraycopy(cs, 0, grown, 0, kept) ;
+		for(int i=kept; i<grown.length; i++) {
+			grown[i] = new Cell() ;
+		}
+		cells = grown ;
+		return grown ;
+	}
+
+	private void checkDimensions(Unit otherUnit) throws UnitException {
+		if(otherUnit.getDimensionKey() != dimensionKey)
+			throw new UnitException(unit, otherUnit) ;
+	}
+
+	private static long plus(long bits, double value) {
+		return Double.doubleToRawLongBits(Double.longBitsToDouble(bits) + value) ;
+	}
+
+	/**
+	 * @return the smallest power of two at least processors, and at least 2.
+	 */
+	private static int cellCount(int processors) {
+		int n = 2 ;
+		while(n < processors)
+			n *= 2 ;
+		return n ;
+	}
+
+	/**
+	 * The conversion of values in a unit to differences in SI units, checked against the dimensions of the adder.
+	 */
+	private static class Conversion {
+		final Unit unit ;
+		final double factor ;
+
+		Conversion(Unit unit) {
+			this.unit = unit ;
+			this.factor = unit.getConversionValue() ;
+		}
+	}
+
+	/**
+	 * A part of the total holding the bits of a double, padded so that no two cells share a cache line.
+	 */
+	private static class Cell {
+		private static final AtomicLongFieldUpdater<Cell> VALUE = AtomicLongFieldUpdater.newUpdater(Cell.class, "value") ;
+
+		long p0, p1, p2, p3, p4, p5, p6 ;
+		volatile long value = Double.doubleToRawLongBits(0.0) ;
+		long q0, q1, q2, q3, q4, q5, q6 ;
+
+		boolean compareAndSet(long expect, long update) {
+			return VALUE.compareAndSet(this, expect, update) ;
+		}
+
+		long getAndReset() {
+			return VALUE.getAndSet(this, Double.doubleToRawLongBits(0.0)) ;
+		}
+	}
+
+}
@@ -0,0 +1,181 @@
+package ca.fwe.units;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A table of constants read from a binary resource the first time it is needed. Names, categories and SI values are held in
+ * arrays, with indexes by category and by case-folded name, and a Constant object is only created when one is asked for. Each
+ * constant is created at most once, so the same object is always returned for it.
+ * <p>
+ * The resource is written with DataOutputStream: the int 0x434E5354 ("CNST"), a short version (1), a short count of units followed
+ * by each unit as a UTF string in the form of Unit.encode(), then an int count of constants, each written as a UTF name, a byte
+ * category, a short index into the units and a double value in SI units. constants.dat is generated from constants.txt by
+ * ConstantCatalogWriter.
+ *
+ * @author Dewey Dunnington
+ *
+ */
+class ConstantCatalog {
+
+	static final int MAGIC = 0x434E5354 ;
+	static final int VERSION = 1 ;
+
+	private final String[] names ;
+	private final int[] categories ;
+	private final short[] unitIndexes ;
+	private final double[] values ;
+	private final Unit[] units ;
+	private final AtomicReferenceArray<Constant> constants ;
+	private final Map<Integer, List<Constant>> byCategory = new HashMap<Integer, List<Constant>>() ;
+	private final Map<String, Integer> byName = new HashMap<String, Integer>() ;
+	private final List<Constant> all ;
+
+	/**
+	 * @param resource the name of a resource next to this class.
+	 * @return the catalog read from resource.
+	 * @throws IllegalStateException if the resource is missing or cannot be read.
+	 */
+	static ConstantCatalog load(String resource) {
+		InputStream stream = ConstantCatalog.class.getResourceAsStream(resource) ;
+		if(stream == null)
+			throw new IllegalStateException("Missing resource " + resource) ;
+		try {
+			try {
+				return new ConstantCatalog(new DataInputStream(new BufferedInputStream(stream))) ;
+			} finally {
+				stream.close() ;
+			}
+		} catch(IOException e) {
+			throw new IllegalStateException("Could not read " + resource, e) ;
+		}
+	}
+
+	private ConstantCatalog(DataInputStream in) throws IOException {
+		if(in.readInt() != MAGIC)
+			throw new IOException("Not a constants table") ;
+		int version = in.readShort() ;
+		if(version != VERSION)
+			throw new IOException("Unsupported constants table version " + version) ;
+
+		units = new Unit[in.readShort()] ;
+		for(int i=0; i<units.length; i++) {
+			Unit unit = Unit.valueOf(in.readUTF()) ;
+			//use the named unit from Units where there is one
+			UnitAlias alias = Units.getAlias(unit) ;
+			units[i] = alias instanceof Unit ? (Unit)alias : unit ;
+		}
+
+		int count = in.readInt() ;
+		names = new String[count] ;
+		categories = new int[count] ;
+		unitIndexes = new short[count] ;
+		values = new double[count] ;
+		Map<Integer, int[]> positions = new HashMap<Integer, int[]>() ;
+		for(int i=0; i<count; i++) {
+			names[i] = in.readUTF() ;
+			categories[i] = in.readByte() ;
+			unitIndexes[i] = in.readShort() ;
+			values[i] = in.readDouble() ;
+			if(!byName.containsKey(names[i].toLowerCase()))
+				byName.put(names[i].toLowerCase(), i) ;
+			int[] list = positions.get(categories[i]) ;
+			if(list == null) {
+				list = new int[1] ;
+				positions.put(categories[i], list) ;
+			}
+			list[0]++ ;
+		}
+
+		constants = new AtomicReferenceArray<Constant>(count) ;
+		all = new Slice(null) ;
+		for(Integer category: positions.keySet()) {
+			int[] list = new int[positions.get(category)[0]] ;
+			int n = 0 ;
+			for(int i=0; i<count; i++) {
+				if(categories[i] == category)
+					list[n++] = i ;
+			}
+			byCategory.put(category, new Slice(list)) ;
+		}
+	}
+
+	/**
+	 * @return every constant in the table, in table order. Constants are created as the list is read.
+	 */
+	List<Constant> getAll() {
+		return all ;
+	}
+
+	/**
+	 * @param category
+	 * @return the constants in category, empty if there are none.
+	 */
+	List<Constant> getConstants(int category) {
+		List<Constant> list = byCategory.get(category) ;
+		return list != null ? list : Collections.<Constant>emptyList() ;
+	}
+
+	/**
+	 * @param name
+	 * @return the first constant named name, ignoring case, null if there is none.
+	 */
+	Constant getConstant(String name) {
+		Integer i = byName.get(name.toLowerCase()) ;
+		return i != null ? get(i) : null ;
+	}
+
+	/**
+	 * @return the names of the constants in table order, without creating them.
+	 */
+	List<String> getNames() {
+		return Collections.unmodifiableList(Arrays.asList(names)) ;
+	}
+
+	private Constant get(int i) {
+		Constant c = constants.get(i) ;
+		if(c == null) {
+			Number value = new Number(values[i], units[unitIndexes[i]], true) ;
+			constants.compareAndSet(i, null, new Constant(names[i], categories[i], value)) ;
+			c = constants.get(i) ;
+		}
+		return c ;
+	}
+
+	/**
+	 * An unmodifiable view of some of the constants, creating them as they are read.
+	 */
+	private class Slice extends AbstractList<Constant> {
+		private final int[] positions ;
+
+		/**
+		 * @param positions the table positions in this list, null for the whole table.
+		 */
+		Slice(int[] positions) {
+			this.positions = positions ;
+		}
+
+		public Constant get(int index) {
+			if(positions == null) {
+				if(index < 0 || index >= names.length)
+					throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + names.length) ;
+				return ConstantCatalog.this.get(index) ;
+			}
+			return ConstantCatalog.this.get(positions[index]) ;
+		}
+
+		public int size() {
+			return positions == null ? names.length : positions.length ;
+		}
+	}
+
+}
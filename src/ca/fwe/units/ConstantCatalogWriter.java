@@ -0,0 +1,112 @@
+package ca.fwe.units;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the binary table read by ConstantCatalog from a text source, so that constants.dat can be rebuilt from constants.txt.
+ * Each line of the source holds a name, a category, a value and a unit separated by tabs; the unit is read with Unit.parse() and
+ * the value converted to SI units. Blank lines and lines starting with '#' are ignored. Units are written to the table in the
+ * order they first appear.
+ * <p>
+ * Usage: java ca.fwe.units.ConstantCatalogWriter constants.txt constants.dat
+ *
+ * @author Dewey Dunnington
+ *
+ */
+class ConstantCatalogWriter {
+
+	public static void main(String[] args) throws IOException {
+		if(args.length != 2) {
+			System.err.println("Usage: java ca.fwe.units.ConstantCatalogWriter <source.txt> <output.dat>") ;
+			System.exit(1) ;
+		}
+		List<String[]> rows = read(args[0]) ;
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(args[1]))) ;
+		try {
+			write(rows, out) ;
+		} finally {
+			out.close() ;
+		}
+	}
+
+	/**
+	 * @param file
+	 * @return the fields of each constant in file.
+	 * @throws IOException if file cannot be read or a line does not have four fields.
+	 */
+	private static List<String[]> read(String file) throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8")) ;
+		try {
+			List<String[]> rows = new ArrayList<String[]>() ;
+			String line ;
+			int lineNumber = 0 ;
+			while((line = in.readLine()) != null) {
+				lineNumber++ ;
+				if(line.trim().length() == 0 || line.startsWith("#"))
+					continue ;
+				String[] fields = line.split("\t") ;
+				if(fields.length != 4)
+					throw new IOException("Expected name, category, value and unit on line " + lineNumber) ;
+				rows.add(fields) ;
+			}
+			return rows ;
+		} finally {
+			in.close() ;
+		}
+	}
+
+	private static void write(List<String[]> rows, DataOutputStream out) throws IOException {
+		Map<String, Integer> unitIndexes = new LinkedHashMap<String, Integer>() ;
+		int[] rowUnits = new int[rows.size()] ;
+		int[] categories = new int[rows.size()] ;
+		double[] siValues = new double[rows.size()] ;
+		for(int i=0; i<rows.size(); i++) {
+			String[] fields = rows.get(i) ;
+			Unit unit ;
+			try {
+				unit = Unit.parse(fields[3].trim()) ;
+			} catch(IllegalArgumentException e) {
+				throw new IOException("Invalid unit for " + fields[0] + ": " + e.getMessage()) ;
+			}
+			String encoded = unit.encode() ;
+			Integer index = unitIndexes.get(encoded) ;
+			if(index == null) {
+				index = unitIndexes.size() ;
+				unitIndexes.put(encoded, index) ;
+			}
+			rowUnits[i] = index ;
+			try {
+				categories[i] = Integer.parseInt(fields[1].trim()) ;
+				siValues[i] = Double.parseDouble(fields[2].trim()) * unit.getConversionValue() + unit.getOffset() ;
+			} catch(NumberFormatException e) {
+				throw new IOException("Invalid category or value for " + fields[0]) ;
+			}
+		}
+
+		out.writeInt(ConstantCatalog.MAGIC) ;
+		out.writeShort(ConstantCatalog.VERSION) ;
+		out.writeShort(unitIndexes.size()) ;
+		for(String encoded: unitIndexes.keySet()) {
+			out.writeUTF(encoded) ;
+		}
+		out.writeInt(rows.size()) ;
+		for(int i=0; i<rows.size(); i++) {
+			String[] fields = rows.get(i) ;
+			out.writeUTF(fields[0]) ;
+			out.writeByte(categories[i]) ;
+			out.writeShort(rowUnits[i]) ;
+			out.writeDouble(siValues[i]) ;
+		}
+	}
+
+}
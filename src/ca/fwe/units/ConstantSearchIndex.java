@@ -0,0 +1,304 @@
+package ca.fwe.units;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A typo-tolerant index of constant names, used by Constants.search() and Constants.find(). Names are case-folded and split into
+ * words, and each distinct word is indexed both by the constants it appears in and by its trigrams (with '$' marking the start
+ * and end of the word). A query word matches the words it equals, the words it is a prefix of, and through shared trigrams the
+ * words within a small edit distance of it (one edit for words up to four letters, two otherwise, counting a swap of adjacent
+ * letters as one edit). Each constant scores the best match of each query word, less a little for each of its words that the
+ * query did not match, so "ashes dry" prefers "Ashes - dry" to "Ashes - wet" and "amonium sulphate wet" still finds "Ammonium
+ * Sulphate - wet".
+ * <p>
+ * The index works on positions in a list of names so that constants need not be created to be indexed. It is immutable; the
+ * working arrays for queries are held for each thread, shared by all indexes and sized for the largest searched.
+ *
+ * @author Dewey Dunnington
+ *
+ */
+class ConstantSearchIndex {
+
+	private static final float EXACT = 1f ;
+	private static final float PREFIX = 0.8f ;
+	private static final float[] EDITS = {1f, 0.7f, 0.4f} ;
+	private static final float UNMATCHED_WORD = 0.05f ;
+	private static final float WHOLE_NAME = 1f ;
+
+	private final String[] names ;
+	private final int[] wordCounts ;
+	private final String[] words ;
+	private final int[][] postings ;
+	private final Map<String, Integer> wordIds = new HashMap<String, Integer>() ;
+	private final Map<String, int[]> trigrams = new HashMap<String, int[]>() ;
+
+	//shared by all indexes and holding none, so that a thread's working arrays do not keep an old index reachable
+	private static final ThreadLocal<Search> searches = new ThreadLocal<Search>() {
+		protected Search initialValue() {
+			return new Search() ;
+		}
+	} ;
+
+	/**
+	 * @param list the names to index; results are positions in this list, and ties are ranked in its order.
+	 */
+	ConstantSearchIndex(List<String> list) {
+		int n = list.size() ;
+		names = new String[n] ;
+		wordCounts = new int[n] ;
+		ArrayList<String> vocabulary = new ArrayList<String>() ;
+		ArrayList<IntList> positions = new ArrayList<IntList>() ;
+		for(int i=0; i<n; i++) {
+			names[i] = normalize(list.get(i)) ;
+			String[] split = split(names[i]) ;
+			wordCounts[i] = split.length ;
+			for(String word: split) {
+				Integer id = wordIds.get(word) ;
+				if(id == null) {
+					id = vocabulary.size() ;
+					wordIds.put(word, id) ;
+					vocabulary.add(word) ;
+					positions.add(new IntList()) ;
+				}
+				positions.get(id).addUnique(i) ;
+			}
+		}
+
+		words = vocabulary.toArray(new String[vocabulary.size()]) ;
+		postings = new int[words.length][] ;
+		Map<String, IntList> building = new HashMap<String, IntList>() ;
+		for(int id=0; id<words.length; id++) {
+			postings[id] = positions.get(id).toArray() ;
+			String padded = '$' + words[id] + '$' ;
+			for(int j=0; j + 3 <= padded.length(); j++) {
+				String gram = padded.substring(j, j + 3) ;
+				IntList tokens = building.get(gram) ;
+				if(tokens == null) {
+					tokens = new IntList() ;
+					building.put(gram, tokens) ;
+				}
+				tokens.addUnique(id) ;
+			}
+		}
+		for(Map.Entry<String, IntList> e: building.entrySet()) {
+			trigrams.put(e.getKey(), e.getValue().toArray()) ;
+		}
+	}
+
+	/**
+	 * @param query
+	 * @param limit the largest number of results.
+	 * @return the positions of the names best matching query, best first.
+	 */
+	int[] search(String query, int limit) {
+		return searches.get().search(this, query, limit) ;
+	}
+
+	/**
+	 * Working arrays for queries, reused from one query to the next and grown to fit the index being searched. Every array is
+	 * left zeroed at the end of a query.
+	 */
+	private static class Search {
+		private float[] scores = new float[0] ;
+		private float[] wordScores = new float[0] ;
+		private int[] matched = new int[0] ;
+		private int[] touched = new int[0] ;
+		private int[] wordTouched = new int[0] ;
+		private int[] trigramHits = new int[0] ;
+		private int[] candidates = new int[0] ;
+
+		int[] search(ConstantSearchIndex index, String query, int limit) {
+			int n = index.names.length ;
+			if(scores.length < n) {
+				scores = new float[n] ;
+				wordScores = new float[n] ;
+				matched = new int[n] ;
+				touched = new int[n] ;
+				wordTouched = new int[n] ;
+			}
+			if(trigramHits.length < index.words.length) {
+				trigramHits = new int[index.words.length] ;
+				candidates = new int[index.words.length] ;
+			}
+			String[] names = index.names ;
+			int[] wordCounts = index.wordCounts ;
+			String q = normalize(query) ;
+			String[] queryWords = split(q) ;
+			int touchedCount = 0 ;
+			for(String word: queryWords) {
+				int wordTouchedCount = matchWord(index, word) ;
+				for(int t=0; t<wordTouchedCount; t++) {
+					int c = wordTouched[t] ;
+					if(matched[c] == 0 && scores[c] == 0)
+						touched[touchedCount++] = c ;
+					scores[c] += wordScores[c] ;
+					matched[c]++ ;
+					wordScores[c] = 0 ;
+				}
+			}
+
+			int size = Math.min(limit, touchedCount) ;
+			int[] best = new int[Math.max(size, 0)] ;
+			float[] bestScores = new float[best.length] ;
+			int found = 0 ;
+			for(int t=0; t<touchedCount; t++) {
+				int c = touched[t] ;
+				float score = scores[c] - UNMATCHED_WORD * Math.max(0, wordCounts[c] - matched[c]) ;
+				if(names[c].equals(q))
+					score += WHOLE_NAME ;
+				scores[c] = 0 ;
+				matched[c] = 0 ;
+				if(best.length == 0 || (found == best.length && !better(score, c, bestScores[found - 1], best[found - 1])))
+					continue ;
+				int j = found == best.length ? found - 1 : found++ ;
+				while(j > 0 && better(score, c, bestScores[j - 1], best[j - 1])) {
+					best[j] = best[j - 1] ;
+					bestScores[j] = bestScores[j - 1] ;
+					j-- ;
+				}
+				best[j] = c ;
+				bestScores[j] = score ;
+			}
+			return found == best.length ? best : Arrays.copyOf(best, found) ;
+		}
+
+		/**
+		 * Finds the indexed words matching word and sets wordScores for each name containing them to the best match score.
+		 *
+		 * @return the number of names added to wordTouched.
+		 */
+		private int matchWord(ConstantSearchIndex index, String word) {
+			int count = 0 ;
+			Integer exact = index.wordIds.get(word) ;
+			if(exact != null)
+				count = score(index, exact, EXACT, count) ;
+
+			//trigram candidates, for prefixes and near misses
+			int candidateCount = 0 ;
+			String padded = '$' + word + '$' ;
+			for(int j=0; j + 3 <= padded.length(); j++) {
+				int[] ids = index.trigrams.get(padded.substring(j, j + 3)) ;
+				if(ids == null)
+					continue ;
+				for(int id: ids) {
+					if(trigramHits[id]++ == 0)
+						candidates[candidateCount++] = id ;
+				}
+			}
+			int maxEdits = word.length() <= 4 ? 1 : 2 ;
+			for(int k=0; k<candidateCount; k++) {
+				int id = candidates[k] ;
+				trigramHits[id] = 0 ;
+				if(exact != null && id == exact)
+					continue ;
+				String candidate = index.words[id] ;
+				if(word.length() >= 2 && candidate.startsWith(word)) {
+					count = score(index, id, PREFIX, count) ;
+				} else if(Math.abs(candidate.length() - word.length()) <= maxEdits) {
+					int edits = distance(word, candidate, maxEdits) ;
+					if(edits <= maxEdits)
+						count = score(index, id, EDITS[edits], count) ;
+				}
+			}
+			return count ;
+		}
+
+		private int score(ConstantSearchIndex index, int wordId, float score, int count) {
+			for(int c: index.postings[wordId]) {
+				if(wordScores[c] == 0)
+					wordTouched[count++] = c ;
+				if(score > wordScores[c])
+					wordScores[c] = score ;
+			}
+			return count ;
+		}
+	}
+
+	private static boolean better(float score, int position, float otherScore, int otherPosition) {
+		return score > otherScore || (score == otherScore && position < otherPosition) ;
+	}
+
+	/**
+	 * @return the optimal string alignment distance between a and b, or max + 1 if it is more than max.
+	 */
+	static int distance(String a, String b, int max) {
+		int n = a.length() ;
+		int m = b.length() ;
+		int[] previous2 = new int[m + 1] ;
+		int[] previous = new int[m + 1] ;
+		int[] current = new int[m + 1] ;
+		for(int j=0; j<=m; j++) {
+			previous[j] = j ;
+		}
+		for(int i=1; i<=n; i++) {
+			current[0] = i ;
+			int rowMin = i ;
+			for(int j=1; j<=m; j++) {
+				int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1 ;
+				int d = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost) ;
+				if(i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1))
+					d = Math.min(d, previous2[j - 2] + 1) ;
+				current[j] = d ;
+				if(d < rowMin)
+					rowMin = d ;
+			}
+			if(rowMin > max)
+				return max + 1 ;
+			int[] recycled = previous2 ;
+			previous2 = previous ;
+			previous = current ;
+			current = recycled ;
+		}
+		return Math.min(previous[m], max + 1) ;
+	}
+
+	/**
+	 * @return name in lower case with every run of characters other than letters and digits replaced by a single space.
+	 */
+	private static String normalize(String name) {
+		StringBuilder s = new StringBuilder(name.length()) ;
+		boolean space = true ;
+		for(int i=0; i<name.length(); i++) {
+			char c = Character.toLowerCase(name.charAt(i)) ;
+			if(Character.isLetterOrDigit(c)) {
+				s.append(c) ;
+				space = false ;
+			} else if(!space) {
+				s.append(' ') ;
+				space = true ;
+			}
+		}
+		if(s.length() > 0 && space)
+			s.setLength(s.length() - 1) ;
+		return s.toString() ;
+	}
+
+	private static String[] split(String normalized) {
+		return normalized.length() == 0 ? new String[0] : normalized.split(" ") ;
+	}
+
+	/**
+	 * A growable list of ints in increasing order.
+	 */
+	private static class IntList {
+		private int[] values = new int[4] ;
+		private int size = 0 ;
+
+		void addUnique(int value) {
+			if(size > 0 && values[size - 1] == value)
+				return ;
+			if(size == values.length)
+				values = Arrays.copyOf(values, size * 2) ;
+			values[size++] = value ;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(values, size) ;
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+package ca.fwe.units;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * Static methods for converting whole arrays and buffers of values between units, without creating a Number for each value.
+ * Each call looks up a shared Converter (see Unit.converterTo()) and converts every value with it, so callers converting many
+ * batches between the same units may prefer to keep the Converter themselves.
+ *
+ * @author Dewey Dunnington
+ *
+ */
+public class Conversions {
+
+	private Conversions() {}
+
+	/**
+	 * Converts all values in src from one unit to another and writes them to dst. src and dst may be the same array.
+	 *
+	 * @param src values in units of from.
+	 * @param from the unit of the values in src.
+	 * @param dst array to write the converted values to, at least as long as src.
+	 * @param to the unit values are written to dst in.
+	 * @throws UnitException if from and to are of different dimensions.
+	 */
+	public static void convert(double[] src, Unit from, double[] dst, Unit to) throws UnitException {
+		from.converterTo(to).convert(src, dst) ;
+	}
+
+	/**
+	 * Converts length values starting at src[srcOffset] from one unit to another and writes them starting at dst[dstOffset].
+	 *
+	 * @param src values in units of from.
+	 * @param srcOffset first index of src to convert.
+	 * @param from the unit of the values in src.
+	 * @param dst array to write the converted values to.
+	 * @param dstOffset first index of dst to write to.
+	 * @param to the unit values are written to dst in.
+	 * @param length the number of values to convert.
+	 * @throws UnitException if from and to are of different dimensions.
+	 */
+	public static void convert(double[] src, int srcOffset, Unit from, double[] dst, int dstOffset, Unit to, int length)
+			throws UnitException {
+		from.converterTo(to).convert(src, srcOffset, dst, dstOffset, length) ;
+	}
+
+	/**
+	 * Converts the remaining values of src from one unit to another and writes them to dst, advancing the position of both
+	 * buffers.
+	 *
+	 * @param src values in units of from.
+	 * @param from the unit of the values in src.
+	 * @param dst buffer to write the converted values to.
+	 * @param to the unit values are written to dst in.
+	 * @throws UnitException if from and to are of different dimensions.
+	 */
+	public static void convert(DoubleBuffer src, Unit from, DoubleBuffer dst, Unit to) throws UnitException {
+		from.converterTo(to).convert(src, dst) ;
+	}
+
+	/**
+	 * Converts values in place.
+	 *
+	 * @param values values in units of from, replaced by values in units of to.
+	 * @param from
+	 * @param to
+	 * @throws UnitException if from and to are of different dimensions.
+	 */
+	public static void convertInPlace(double[] values, Unit from, Unit to) throws UnitException {
+		from.converterTo(to).convert(values, values) ;
+	}
+
+}
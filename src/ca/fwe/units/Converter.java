@@ -0,0 +1,177 @@
+package ca.fwe.units;
+
+import java.nio.BufferOverflowException;
+import java.nio.DoubleBuffer;
+
+/**
+ * Converts values from one Unit to another of the same dimensions. Dimensions are checked once when the Converter is created,
+ * and the two conversion values and offsets are combined into a single factor and offset, so that converting a value is a
+ * single multiply-add (value * getFactor() + getOffset()). The offset is only non-zero when one of the units describes absolute
+ * values with an offset, such as degrees Celcius; use convertDelta() to convert differences between such values. Obtained from
+ * Unit.converterTo(), which shares Converter objects between callers. Immutable and safe to use from multiple threads.
+ *
+ * @author Dewey Dunnington
+ *
+ */
+public class Converter {
+
+	private final Unit source ;
+	private final Unit target ;
+	private final double factor ;
+	private final double offset ;
+
+	/**
+	 * @param source the unit values will be described in before conversion.
+	 * @param target the unit values will be described in after conversion.
+	 * @throws UnitException if the units are of different dimensions.
+	 */
+	Converter(Unit source, Unit target) throws UnitException {
+		if(source.getDimensionKey() != target.getDimensionKey())
+			throw new UnitException(source, target) ;
+		this.source = source ;
+		this.target = target ;
+		this.factor = source.getConversionValue() / target.getConversionValue() ;
+		this.offset = (source.getOffset() - target.getOffset()) / target.getConversionValue() ;
+	}
+
+	/**
+	 * Creates the inverse of a Converter.
+	 */
+	private Converter(Converter forward) {
+		this.source = forward.target ;
+		this.target = forward.source ;
+		this.factor = forward.target.getConversionValue() / forward.source.getConversionValue() ;
+		this.offset = (forward.target.getOffset() - forward.source.getOffset()) / forward.source.getConversionValue() ;
+	}
+
+	/**
+	 * @return the unit values are converted from.
+	 */
+	public Unit getSource() {
+		return source ;
+	}
+
+	/**
+	 * @return the unit values are converted to.
+	 */
+	public Unit getTarget() {
+		return target ;
+	}
+
+	/**
+	 * @return the value a number in the source unit is multiplied by to get the number in the target unit.
+	 */
+	public double getFactor() {
+		return factor ;
+	}
+
+	/**
+	 * @return the value added after multiplying by getFactor(). 0 unless one of the units has an offset.
+	 */
+	public double getOffset() {
+		return offset ;
+	}
+
+	/**
+	 * @return a Converter from the target unit to the source unit.
+	 */
+	public Converter inverse() {
+		return new Converter(this) ;
+	}
+
+	/**
+	 * @param value a value in the source unit
+	 * @return the value in the target unit
+	 */
+	public double convert(double value) {
+		return value * factor + offset ;
+	}
+
+	/**
+	 * @param value a difference between two values in the source unit
+	 * @return the difference in the target unit, ignoring any offset (e.g. 1 degree Celcius is 1.8 degrees Farenheight).
+	 */
+	public double convertDelta(double value) {
+		return value * factor ;
+	}
+
+	/**
+	 * @param values values in the source unit, not modified.
+	 * @return a new array of the values in the target unit.
+	 */
+	public double[] convert(double[] values) {
+		double[] out = new double[values.length] ;
+		convert(values, 0, out, 0, values.length) ;
+		return out ;
+	}
+
+	/**
+	 * Converts all values in src and writes them to dst. src and dst may be the same array.
+	 *
+	 * @param src values in the source unit.
+	 * @param dst array to write values in the target unit to, at least as long as src.
+	 */
+	public void convert(double[] src, double[] dst) {
+		convert(src, 0, dst, 0, src.length) ;
+	}
+
+	/**
+	 * Converts length values starting at src[srcOffset] and writes them starting at dst[dstOffset]. src and dst may be the same
+	 * array if srcOffset and dstOffset are equal. The loops are kept to a single multiply (or multiply-add) per element so that
+	 * the JIT compiler can turn them into SIMD instructions.
+	 *
+	 * @param src values in the source unit.
+	 * @param srcOffset first index of src to convert.
+	 * @param dst array to write values in the target unit to.
+	 * @param dstOffset first index of dst to write to.
+	 * @param length the number of values to convert.
+	 */
+	public void convert(double[] src, int srcOffset, double[] dst, int dstOffset, int length) {
+		if(length < 0 || srcOffset < 0 || dstOffset < 0 || srcOffset + length > src.length || dstOffset + length > dst.length)
+			throw new ArrayIndexOutOfBoundsException("Cannot convert " + length + " values from offset " + srcOffset +
+					" of " + src.length + " to offset " + dstOffset + " of " + dst.length) ;
+		double f = factor ;
+		double o = offset ;
+		if(o == 0) {
+			for(int i=0; i<length; i++) {
+				dst[dstOffset + i] = src[srcOffset + i] * f ;
+			}
+		} else {
+			for(int i=0; i<length; i++) {
+				dst[dstOffset + i] = src[srcOffset + i] * f + o ;
+			}
+		}
+	}
+
+	/**
+	 * Converts the remaining values of src and writes them to dst, advancing the position of both buffers by the number of
+	 * values converted, as DoubleBuffer.put(DoubleBuffer) does. Heap buffers are converted through their backing arrays.
+	 *
+	 * @param src values in the source unit.
+	 * @param dst buffer to write values in the target unit to.
+	 * @throws BufferOverflowException if dst has fewer values remaining than src.
+	 */
+	public void convert(DoubleBuffer src, DoubleBuffer dst) {
+		int length = src.remaining() ;
+		if(dst.remaining() < length)
+			throw new BufferOverflowException() ;
+		int srcPos = src.position() ;
+		int dstPos = dst.position() ;
+		if(src.hasArray() && dst.hasArray()) {
+			convert(src.array(), src.arrayOffset() + srcPos, dst.array(), dst.arrayOffset() + dstPos, length) ;
+		} else {
+			double f = factor ;
+			double o = offset ;
+			for(int i=0; i<length; i++) {
+				dst.put(dstPos + i, src.get(srcPos + i) * f + o) ;
+			}
+		}
+		src.position(srcPos + length) ;
+		dst.position(dstPos + length) ;
+	}
+
+	public String toString() {
+		return source.toString(false) + " -> " + target.toString(false) ;
+	}
+
+}
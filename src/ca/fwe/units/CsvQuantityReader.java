@@ -0,0 +1,234 @@
+package ca.fwe.units;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+
+/**
+ * Reads comma-separated values whose header row gives the Unit of each column, as written by CsvQuantityWriter. Each header cell
+ * is an optional column name followed by a string from Unit.encode() (e.g. "flow &ft&ft&ft/&s"), so names may not contain '&'.
+ * Units are decoded once from the header and values are parsed straight from the character buffer into primitive arrays, converted
+ * to a target unit for each column with a Converter, so reading a file of any size allocates almost nothing per value. Empty
+ * cells are read as NaN.
+ *
+ * @author Dewey Dunnington
+ *
+ */
+public class CsvQuantityReader implements Closeable {
+
+	private static final int BUFFER_SIZE = 1 << 16 ;
+
+	private final Reader in ;
+	private char[] buffer = new char[BUFFER_SIZE] ;
+	private CharBuffer chars = CharBuffer.wrap(buffer) ;
+	private int position = 0 ;
+	private int limit = 0 ;
+	private boolean eof = false ;
+	private long line = 1 ;
+
+	private final String[] names ;
+	private final Unit[] units ;
+	private final Converter[] converters ;
+
+	/**
+	 * Reads the header row.
+	 *
+	 * @param in
+	 * @throws IOException if the header cannot be read or a unit in it cannot be decoded.
+	 */
+	public CsvQuantityReader(Reader in) throws IOException {
+		this.in = in ;
+		ArrayList<String> cells = new ArrayList<String>() ;
+		StringBuilder cell = new StringBuilder() ;
+		while(true) {
+			if(position >= limit && !fill())
+				break ;
+			char c = buffer[position++] ;
+			if(c == '\n') {
+				break ;
+			} else if(c == ',') {
+				cells.add(cell.toString()) ;
+				cell.setLength(0) ;
+			} else if(c != '\r' && c != '"') {
+				cell.append(c) ;
+			}
+		}
+		cells.add(cell.toString()) ;
+
+		names = new String[cells.size()] ;
+		units = new Unit[cells.size()] ;
+		converters = new Converter[cells.size()] ;
+		for(int i=0; i<cells.size(); i++) {
+			String header = cells.get(i) ;
+			int unitStart = header.indexOf('&') ;
+			Unit unit = unitStart >= 0 ? Unit.valueOf(header.substring(unitStart)) : null ;
+			if(unit == null)
+				throw new IOException("Cannot decode unit of column " + (i + 1) + ": \"" + header + "\"") ;
+			names[i] = header.substring(0, unitStart).trim() ;
+			units[i] = unit ;
+			try {
+				converters[i] = unit.converterTo(unit) ;
+			} catch(UnitException e) {
+				throw new IllegalStateException(e) ;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of columns in the header.
+	 */
+	public int getColumnCount() {
+		return units.length ;
+	}
+
+	/**
+	 * @param column
+	 * @return the name of column, an empty String if the header gave none.
+	 */
+	public String getName(int column) {
+		return names[column] ;
+	}
+
+	/**
+	 * @param column
+	 * @return the unit of the values of column in the file.
+	 */
+	public Unit getUnit(int column) {
+		return units[column] ;
+	}
+
+	/**
+	 * @param column
+	 * @return the unit values of column are read in, getUnit(column) unless changed with setTargetUnit().
+	 */
+	public Unit getTargetUnit(int column) {
+		return converters[column].getTarget() ;
+	}
+
+	/**
+	 * @param column
+	 * @param target the unit values of column will be converted to when read.
+	 * @throws UnitException if target is not in the same dimensions as the column.
+	 */
+	public void setTargetUnit(int column, Unit target) throws UnitException {
+		converters[column] = units[column].converterTo(target) ;
+	}
+
+	/**
+	 * Reads up to maxRows rows, writing the values of column i to columns[i], starting at index offset. Blank lines are skipped.
+	 *
+	 * @param columns one array per column, each at least offset + maxRows long.
+	 * @param offset the index in each array to write the first row to.
+	 * @param maxRows the most rows to read.
+	 * @return the number of rows read, -1 if the end of the file was reached before any row was read.
+	 * @throws IOException if reading fails, or a row has the wrong number of columns or a value that is not a number.
+	 */
+	public int read(double[][] columns, int offset, int maxRows) throws IOException {
+		if(columns.length < units.length)
+			throw new IllegalArgumentException("Need " + units.length + " arrays to read into, got " + columns.length) ;
+		int rows = 0 ;
+		while(rows < maxRows && skipBlankLines()) {
+			for(int c=0; c<units.length; c++) {
+				int end = scanField() ;
+				columns[c][offset + rows] = converters[c].convert(parseField(position, end, c)) ;
+				position = end ;
+				boolean comma = position < limit && buffer[position] == ',' ;
+				if(c < units.length - 1 && !comma)
+					throw new IOException("Line " + line + " has " + (c + 1) + " columns, expected " + units.length) ;
+				else if(c == units.length - 1 && comma)
+					throw new IOException("Line " + line + " has more than " + units.length + " columns") ;
+				if(comma)
+					position++ ;
+			}
+			rows++ ;
+		}
+		return rows == 0 && maxRows > 0 ? -1 : rows ;
+	}
+
+	private double parseField(int start, int end, int column) throws IOException {
+		while(start < end && (buffer[start] == ' ' || buffer[start] == '\t'))
+			start++ ;
+		while(end > start && (buffer[end - 1] == ' ' || buffer[end - 1] == '\t'))
+			end-- ;
+		if(start == end)
+			return Double.NaN ;
+		try {
+			return DecimalParser.parse(chars, start, end) ;
+		} catch(NumberFormatException e) {
+			throw new IOException("Line " + line + ", column " + (column + 1) + ": \"" + new String(buffer, start, end - start) +
+					"\" is not a number") ;
+		}
+	}
+
+	/**
+	 * @return the index of the ',' or end of line following the field at position, or limit at the end of the file.
+	 */
+	private int scanField() throws IOException {
+		int i = position ;
+		while(true) {
+			for(; i<limit; i++) {
+				char c = buffer[i] ;
+				if(c == ',' || c == '\n' || c == '\r')
+					return i ;
+			}
+			int scanned = i - position ;
+			if(!fill())
+				return limit ;
+			i = position + scanned ;
+		}
+	}
+
+	/**
+	 * @return false if the end of the file was reached.
+	 */
+	private boolean skipBlankLines() throws IOException {
+		while(true) {
+			if(position >= limit && !fill())
+				return false ;
+			char c = buffer[position] ;
+			if(c == '\n') {
+				line++ ;
+				position++ ;
+			} else if(c == '\r') {
+				position++ ;
+			} else {
+				return true ;
+			}
+		}
+	}
+
+	/**
+	 * Moves unread characters to the start of the buffer, growing it if it is full, and reads more.
+	 *
+	 * @return false if no more characters could be read.
+	 */
+	private boolean fill() throws IOException {
+		if(eof)
+			return false ;
+		int remaining = limit - position ;
+		if(position == 0 && remaining == buffer.length) {
+			char[] grown = new char[buffer.length * 2] ;
+			System.arraycopy(buffer, 0, grown, 0, remaining) ;
+			buffer = grown ;
+			chars = CharBuffer.wrap(buffer) ;
+		} else if(position > 0) {
+			System.arraycopy(buffer, position, buffer, 0, remaining) ;
+		}
+		position = 0 ;
+		limit = remaining ;
+		int read = in.read(buffer, limit, buffer.length - limit) ;
+		if(read < 0) {
+			eof = true ;
+			return false ;
+		}
+		limit += read ;
+		return true ;
+	}
+
+	public void close() throws IOException {
+		in.close() ;
+	}
+
+}
@@ -0,0 +1,163 @@
+package ca.fwe.units;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes comma-separated values with a header row giving the Unit of each column, in the format read by CsvQuantityReader.
+ * Values are passed as primitive arrays in a source unit for each column and converted to the column's unit with a Converter. NaN
+ * values are written as empty cells. Output is collected in an internal buffer and passed to the Writer in large blocks.
+ *
+ * @author Dewey Dunnington
+ *
+ */
+public class CsvQuantityWriter implements Closeable, Flushable {
+
+	private static final int BUFFER_SIZE = 1 << 16 ;
+
+	private final Writer out ;
+	private final char[] buffer = new char[BUFFER_SIZE] ;
+	private final char[] digits = new char[DoubleFormatter.MAX_LENGTH * 2] ;
+	private int length = 0 ;
+	private final Unit[] units ;
+	private final Converter[] converters ;
+
+	/**
+	 * Writes the header row.
+	 *
+	 * @param out
+	 * @param names the name of each column, or null to write units only. Names may not contain ',' or '&'.
+	 * @param units the unit each column is written in.
+	 * @throws IOException if the header cannot be written.
+	 */
+	public CsvQuantityWriter(Writer out, String[] names, Unit[] units) throws IOException {
+		if(names != null && names.length != units.length)
+			throw new IllegalArgumentException(names.length + " names given for " + units.length + " columns") ;
+		this.out = out ;
+		this.units = units.clone() ;
+		this.converters = new Converter[units.length] ;
+		for(int i=0; i<units.length; i++) {
+			if(i > 0)
+				append(',') ;
+			if(names != null && names[i] != null && names[i].length() > 0) {
+				if(names[i].indexOf(',') >= 0 || names[i].indexOf('&') >= 0)
+					throw new IllegalArgumentException("Column name may not contain ',' or '&': " + names[i]) ;
+				append(names[i]) ;
+				append(' ') ;
+			}
+			append(units[i].encode()) ;
+			try {
+				converters[i] = units[i].converterTo(units[i]) ;
+			} catch(UnitException e) {
+				throw new IllegalStateException(e) ;
+			}
+		}
+		append('\n') ;
+		flushBuffer() ;
+	}
+
+	/**
+	 * @param column
+	 * @return the unit values of column are written in.
+	 */
+	public Unit getUnit(int column) {
+		return units[column] ;
+	}
+
+	/**
+	 * @param column
+	 * @param source the unit values of column will be passed to write() in.
+	 * @throws UnitException if source is not in the same dimensions as the column.
+	 */
+	public void setSourceUnit(int column, Unit source) throws UnitException {
+		converters[column] = source.converterTo(units[column]) ;
+	}
+
+	/**
+	 * Writes rows values from each array, starting at index offset.
+	 *
+	 * @param columns one array per column, each at least offset + rows long.
+	 * @param offset the index in each array of the first row to write.
+	 * @param rows the number of rows to write.
+	 * @throws IOException if writing fails.
+	 */
+	public void write(double[][] columns, int offset, int rows) throws IOException {
+		if(columns.length != units.length)
+			throw new IllegalArgumentException("Need " + units.length + " arrays to write, got " + columns.length) ;
+		for(int r=offset; r<offset + rows; r++) {
+			for(int c=0; c<units.length; c++) {
+				if(c > 0)
+					append(',') ;
+				double value = converters[c].convert(columns[c][r]) ;
+				if(value == value)
+					appendDouble(value) ;
+			}
+			append('\n') ;
+		}
+	}
+
+	/**
+	 * @param values one value for each column.
+	 * @throws IOException if writing fails.
+	 */
+	public void writeRow(double... values) throws IOException {
+		if(values.length != units.length)
+			throw new IllegalArgumentException("Need " + units.length + " values, got " + values.length) ;
+		for(int c=0; c<units.length; c++) {
+			if(c > 0)
+				append(',') ;
+			double value = converters[c].convert(values[c]) ;
+			if(value == value)
+				appendDouble(value) ;
+		}
+		append('\n') ;
+	}
+
+	private void append(char c) throws IOException {
+		if(length == buffer.length)
+			flushBuffer() ;
+		buffer[length++] = c ;
+	}
+
+	private void append(String s) throws IOException {
+		int start = 0 ;
+		while(start < s.length()) {
+			if(length == buffer.length)
+				flushBuffer() ;
+			int end = Math.min(s.length(), start + buffer.length - length) ;
+			s.getChars(start, end, buffer, length) ;
+			length += end - start ;
+			start = end ;
+		}
+	}
+
+	/**
+	 * Appends value with the fewest digits that read back to the same double, laid out as Double.toString() lays them out,
+	 * without creating a String.
+	 */
+	private void appendDouble(double value) throws IOException {
+		int n = DoubleFormatter.formatShortest(value, digits) ;
+		if(length + n > buffer.length)
+			flushBuffer() ;
+		System.arraycopy(digits, 0, buffer, length, n) ;
+		length += n ;
+	}
+
+	private void flushBuffer() throws IOException {
+		out.write(buffer, 0, length) ;
+		length = 0 ;
+	}
+
+	public void flush() throws IOException {
+		flushBuffer() ;
+		out.flush() ;
+	}
+
+	public void close() throws IOException {
+		flushBuffer() ;
+		out.close() ;
+	}
+
+}
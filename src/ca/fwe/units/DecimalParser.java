@@ -0,0 +1,148 @@
+package ca.fwe.units;
+
+/**
+ * Parses decimal numbers directly from a range of characters without creating a String. Numbers with at most 18 significant
+ * digits and a decimal exponent small enough that the result is a single exact multiplication or division by a power of ten
+ * (almost all values written by people and data loggers) are parsed here; anything else, including "NaN" and "Infinity", is
+ * passed to Double.parseDouble() so that results are always identical to it.
+ *
+ * @author Dewey Dunnington
+ *
+ */
+class DecimalParser {
+
+	private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14,
+		1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22} ;
+
+	/**
+	 * Largest mantissa that is exactly representable as a double.
+	 */
+	private static final long MAX_EXACT_MANTISSA = 1L << 53 ;
+
+	private DecimalParser() {}
+
+	/**
+	 * @param chars
+	 * @param from first character of the number, inclusive.
+	 * @param to last character of the number, exclusive.
+	 * @return the value of the number, exactly as Double.parseDouble() would return it.
+	 * @throws NumberFormatException if the characters are not a number.
+	 */
+	static double parse(CharSequence chars, int from, int to) {
+		int i = from ;
+		boolean negative = false ;
+		if(i < to && (chars.charAt(i) == '-' || chars.charAt(i) == '+')) {
+			negative = chars.charAt(i) == '-' ;
+			i++ ;
+		}
+
+		long mantissa = 0 ;
+		int significant = 0 ;
+		int exponent = 0 ;
+		boolean digits = false ;
+		boolean exact = true ;
+		for(; i < to ; i++) {
+			int d = chars.charAt(i) - '0' ;
+			if(d < 0 || d > 9)
+				break ;
+			digits = true ;
+			if(significant < 18) {
+				mantissa = mantissa * 10 + d ;
+				if(mantissa != 0)
+					significant++ ;
+			} else {
+				exponent++ ;
+				exact &= d == 0 ;
+			}
+		}
+		if(i < to && chars.charAt(i) == '.') {
+			for(i++; i < to ; i++) {
+				int d = chars.charAt(i) - '0' ;
+				if(d < 0 || d > 9)
+					break ;
+				digits = true ;
+				if(significant < 18) {
+					mantissa = mantissa * 10 + d ;
+					exponent-- ;
+					if(mantissa != 0)
+						significant++ ;
+				} else {
+					exact &= d == 0 ;
+				}
+			}
+		}
+		if(digits && i < to && (chars.charAt(i) == 'e' || chars.charAt(i) == 'E')) {
+			i++ ;
+			boolean negativeExponent = false ;
+			if(i < to && (chars.charAt(i) == '-' || chars.charAt(i) == '+')) {
+				negativeExponent = chars.charAt(i) == '-' ;
+				i++ ;
+			}
+			int written = 0 ;
+			boolean exponentDigits = false ;
+			for(; i < to ; i++) {
+				int d = chars.charAt(i) - '0' ;
+				if(d < 0 || d > 9)
+					break ;
+				exponentDigits = true ;
+				if(written < 10000)
+					written = written * 10 + d ;
+			}
+			if(!exponentDigits)
+				return fallback(chars, from, to) ;
+			exponent += negativeExponent ? -written : written ;
+		}
+
+		if(!digits || i != to || !exact || mantissa > MAX_EXACT_MANTISSA || exponent < -22 || exponent > 22)
+			return fallback(chars, from, to) ;
+
+		double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent] ;
+		return negative ? -value : value ;
+	}
+
+	/**
+	 * @param chars
+	 * @param from first character of the token, inclusive.
+	 * @param to last character of the token, exclusive.
+	 * @return true if the characters are a plain decimal number that parse() accepts without falling back to
+	 * Double.parseDouble(), i.e. an optional sign, digits with an optional decimal point, and an optional exponent.
+	 */
+	static boolean isDecimal(CharSequence chars, int from, int to) {
+		int i = from ;
+		if(i < to && (chars.charAt(i) == '-' || chars.charAt(i) == '+'))
+			i++ ;
+		int start = i ;
+		while(i < to && isDigit(chars.charAt(i)))
+			i++ ;
+		boolean digits = i > start ;
+		if(i < to && chars.charAt(i) == '.') {
+			i++ ;
+			start = i ;
+			while(i < to && isDigit(chars.charAt(i)))
+				i++ ;
+			digits |= i > start ;
+		}
+		if(!digits)
+			return false ;
+		if(i < to && (chars.charAt(i) == 'e' || chars.charAt(i) == 'E')) {
+			i++ ;
+			if(i < to && (chars.charAt(i) == '-' || chars.charAt(i) == '+'))
+				i++ ;
+			start = i ;
+			while(i < to && isDigit(chars.charAt(i)))
+				i++ ;
+			if(i == start)
+				return false ;
+		}
+		return i == to ;
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9' ;
+	}
+
+	private static double fallback(CharSequence chars, int from, int to) {
+		return Double.parseDouble(chars.subSequence(from, to).toString()) ;
+	}
+
+}
@@ -0,0 +1,363 @@
+package ca.fwe.units;
+
+/**
+ * Formats doubles into a char array without creating objects, as the counterpart of DecimalParser. formatShortest() writes the
+ * fewest significant digits that parse back to the same double, laid out as Double.toString() lays them out ("12.0", "0.001",
+ * "1.0E7"). formatSignificant() rounds to a given number of significant digits and drops trailing zeros ("12", "0.333", "1.5E-6").
+ * <p>
+ * Digits are generated with Florian Loitsch's Grisu2 algorithm, as used in RapidJSON: the double and its rounding boundaries are
+ * scaled by a cached power of ten into 64-bit fixed point, and digits are generated until the result is inside the boundaries.
+ * The result always parses back to the same double and is the shortest such result for all but a tiny fraction of values, where
+ * it may have one digit more.
+ *
+ * @author Dewey Dunnington
+ *
+ */
+class DoubleFormatter {
+
+	/**
+	 * The most characters either method writes.
+	 */
+	static final int MAX_LENGTH = 32 ;
+
+	private static final long SIGNIFICAND_MASK = 0x000FFFFFFFFFFFFFL ;
+	private static final long HIDDEN_BIT = 0x0010000000000000L ;
+	private static final int EXPONENT_BIAS = 0x3FF + 52 ;
+	private static final int MIN_EXPONENT = -EXPONENT_BIAS + 1 ;
+
+	private static final long[] POW10 = {1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L} ;
+
+	/**
+	 * Significands of 10^k for k = -348, -340, ..., 340, normalized to 64 bits.
+	 */
+	private static final long[] CACHED_POWERS_F = {
+		0xfa8fd5a0081c0288L, 0xbaaee17fa23ebf76L, 0x8b16fb203055ac76L, 0xcf42894a5dce35eaL,
+		0x9a6bb0aa55653b2dL, 0xe61acf033d1a45dfL, 0xab70fe17c79ac6caL, 0xff77b1fcbebcdc4fL,
+		0xbe5691ef416bd60cL, 0x8dd01fad907ffc3cL, 0xd3515c2831559a83L, 0x9d71ac8fada6c9b5L,
+		0xea9c227723ee8bcbL, 0xaecc49914078536dL, 0x823c12795db6ce57L, 0xc21094364dfb5637L,
+		0x9096ea6f3848984fL, 0xd77485cb25823ac7L, 0xa086cfcd97bf97f4L, 0xef340a98172aace5L,
+		0xb23867fb2a35b28eL, 0x84c8d4dfd2c63f3bL, 0xc5dd44271ad3cdbaL, 0x936b9fcebb25c996L,
+		0xdbac6c247d62a584L, 0xa3ab66580d5fdaf6L, 0xf3e2f893dec3f126L, 0xb5b5ada8aaff80b8L,
+		0x87625f056c7c4a8bL, 0xc9bcff6034c13053L, 0x964e858c91ba2655L, 0xdff9772470297ebdL,
+		0xa6dfbd9fb8e5b88fL, 0xf8a95fcf88747d94L, 0xb94470938fa89bcfL, 0x8a08f0f8bf0f156bL,
+		0xcdb02555653131b6L, 0x993fe2c6d07b7facL, 0xe45c10c42a2b3b06L, 0xaa242499697392d3L,
+		0xfd87b5f28300ca0eL, 0xbce5086492111aebL, 0x8cbccc096f5088ccL, 0xd1b71758e219652cL,
+		0x9c40000000000000L, 0xe8d4a51000000000L, 0xad78ebc5ac620000L, 0x813f3978f8940984L,
+		0xc097ce7bc90715b3L, 0x8f7e32ce7bea5c70L, 0xd5d238a4abe98068L, 0x9f4f2726179a2245L,
+		0xed63a231d4c4fb27L, 0xb0de65388cc8ada8L, 0x83c7088e1aab65dbL, 0xc45d1df942711d9aL,
+		0x924d692ca61be758L, 0xda01ee641a708deaL, 0xa26da3999aef774aL, 0xf209787bb47d6b85L,
+		0xb454e4a179dd1877L, 0x865b86925b9bc5c2L, 0xc83553c5c8965d3dL, 0x952ab45cfa97a0b3L,
+		0xde469fbd99a05fe3L, 0xa59bc234db398c25L, 0xf6c69a72a3989f5cL, 0xb7dcbf5354e9beceL,
+		0x88fcf317f22241e2L, 0xcc20ce9bd35c78a5L, 0x98165af37b2153dfL, 0xe2a0b5dc971f303aL,
+		0xa8d9d1535ce3b396L, 0xfb9b7cd9a4a7443cL, 0xbb764c4ca7a44410L, 0x8bab8eefb6409c1aL,
+		0xd01fef10a657842cL, 0x9b10a4e5e9913129L, 0xe7109bfba19c0c9dL, 0xac2820d9623bf429L,
+		0x80444b5e7aa7cf85L, 0xbf21e44003acdd2dL, 0x8e679c2f5e44ff8fL, 0xd433179d9c8cb841L,
+		0x9e19db92b4e31ba9L, 0xeb96bf6ebadf77d9L, 0xaf87023b9bf0ee6bL
+	} ;
+
+	/**
+	 * Binary exponents of CACHED_POWERS_F.
+	 */
+	private static final int[] CACHED_POWERS_E = {
+		-1220, -1193, -1166, -1140, -1113, -1087, -1060, -1034, -1007, -980, -954, -927, -901, -874, -847, -821,
+		-794, -768, -741, -715, -688, -661, -635, -608, -582, -555, -529, -502, -475, -449, -422, -396,
+		-369, -343, -316, -289, -263, -236, -210, -183, -157, -130, -103, -77, -50, -24, 3, 30,
+		56, 83, 109, 136, 162, 189, 216, 242, 269, 295, 322, 348, 375, 402, 428, 455,
+		481, 508, 534, 561, 588, 614, 641, 667, 694, 720, 747, 774, 800, 827, 853, 880,
+		907, 933, 960, 986, 1013, 1039, 1066
+	} ;
+
+	private static final ThreadLocal<char[]> buffers = new ThreadLocal<char[]>() {
+		protected char[] initialValue() {
+			return new char[MAX_LENGTH * 2] ;
+		}
+	} ;
+
+	private DoubleFormatter() {}
+
+	/**
+	 * @return a buffer for the calling thread, at least MAX_LENGTH * 2 long, for the format methods.
+	 */
+	static char[] buffer() {
+		return buffers.get() ;
+	}
+
+	/**
+	 * Writes value with the fewest significant digits that parse back to it.
+	 *
+	 * @param value
+	 * @param buffer at least MAX_LENGTH * 2 long; the second half is used for working.
+	 * @return the number of characters written at the start of buffer.
+	 */
+	static int formatShortest(double value, char[] buffer) {
+		int special = special(value, buffer) ;
+		if(special > 0)
+			return special ;
+		int digits = digits(Math.abs(value), buffer) ;
+		return layout(value < 0, buffer, digits & 0xff, digits >> 8, true) ;
+	}
+
+	/**
+	 * Writes value rounded half up to at most significantDigits significant digits, without trailing zeros.
+	 *
+	 * @param value
+	 * @param significantDigits from 1 to 17.
+	 * @param buffer at least MAX_LENGTH * 2 long; the second half is used for working.
+	 * @return the number of characters written at the start of buffer.
+	 */
+	static int formatSignificant(double value, int significantDigits, char[] buffer) {
+		if(significantDigits < 1 || significantDigits > 17)
+			throw new IllegalArgumentException("Significant digits must be from 1 to 17: " + significantDigits) ;
+		if(value == 0) {
+			int i = 0 ;
+			if(Double.doubleToRawLongBits(value) < 0)
+				buffer[i++] = '-' ;
+			buffer[i++] = '0' ;
+			return i ;
+		}
+		int special = special(value, buffer) ;
+		if(special > 0)
+			return special ;
+		int digits = digits(Math.abs(value), buffer) ;
+		int length = digits & 0xff ;
+		int exponent = digits >> 8 ;
+		if(length > significantDigits) {
+			exponent += length - significantDigits ;
+			boolean up = buffer[MAX_LENGTH + significantDigits] >= '5' ;
+			length = significantDigits ;
+			if(up) {
+				int i = length - 1 ;
+				while(i >= 0 && buffer[MAX_LENGTH + i] == '9') {
+					buffer[MAX_LENGTH + i] = '0' ;
+					i-- ;
+				}
+				if(i >= 0) {
+					buffer[MAX_LENGTH + i]++ ;
+				} else {
+					buffer[MAX_LENGTH] = '1' ;
+					exponent += length ;
+					length = 1 ;
+				}
+			}
+		}
+		while(length > 1 && buffer[MAX_LENGTH + length - 1] == '0') {
+			length-- ;
+			exponent++ ;
+		}
+		return layout(value < 0, buffer, length, exponent, false) ;
+	}
+
+	/**
+	 * Writes NaN, infinities and zeros.
+	 *
+	 * @return the number of characters written, 0 if value is none of these.
+	 */
+	private static int special(double value, char[] buffer) {
+		String text ;
+		if(value != value)
+			text = "NaN" ;
+		else if(value == Double.POSITIVE_INFINITY)
+			text = "Infinity" ;
+		else if(value == Double.NEGATIVE_INFINITY)
+			text = "-Infinity" ;
+		else if(value == 0)
+			text = (Double.doubleToRawLongBits(value) < 0) ? "-0.0" : "0.0" ;
+		else
+			return 0 ;
+		text.getChars(0, text.length(), buffer, 0) ;
+		return text.length() ;
+	}
+
+	/**
+	 * Places the digits at buffer[MAX_LENGTH] in buffer[0] in plain or scientific notation like Double.toString().
+	 *
+	 * @param exponent the power of ten of the last digit.
+	 * @param pointZero true to write "12.0" and "1.0E7" rather than "12" and "1E7".
+	 */
+	private static int layout(boolean negative, char[] buffer, int length, int exponent, boolean pointZero) {
+		int i = 0 ;
+		if(negative)
+			buffer[i++] = '-' ;
+		int point = length + exponent ;		//digits before the decimal point
+		if(point > -3 && point <= 7) {
+			if(point <= 0) {
+				buffer[i++] = '0' ;
+				buffer[i++] = '.' ;
+				for(int z=point; z<0; z++) {
+					buffer[i++] = '0' ;
+				}
+				for(int d=0; d<length; d++) {
+					buffer[i++] = buffer[MAX_LENGTH + d] ;
+				}
+			} else {
+				for(int d=0; d<point; d++) {
+					buffer[i++] = d < length ? buffer[MAX_LENGTH + d] : '0' ;
+				}
+				if(length > point) {
+					buffer[i++] = '.' ;
+					for(int d=point; d<length; d++) {
+						buffer[i++] = buffer[MAX_LENGTH + d] ;
+					}
+				} else if(pointZero) {
+					buffer[i++] = '.' ;
+					buffer[i++] = '0' ;
+				}
+			}
+		} else {
+			buffer[i++] = buffer[MAX_LENGTH] ;
+			if(length > 1 || pointZero)
+				buffer[i++] = '.' ;
+			for(int d=1; d<length; d++) {
+				buffer[i++] = buffer[MAX_LENGTH + d] ;
+			}
+			if(length == 1 && pointZero)
+				buffer[i++] = '0' ;
+			buffer[i++] = 'E' ;
+			int e = point - 1 ;
+			if(e < 0) {
+				buffer[i++] = '-' ;
+				e = -e ;
+			}
+			if(e >= 100)
+				buffer[i++] = (char)('0' + e / 100) ;
+			if(e >= 10)
+				buffer[i++] = (char)('0' + e / 10 % 10) ;
+			buffer[i++] = (char)('0' + e % 10) ;
+		}
+		return i ;
+	}
+
+	/**
+	 * Generates the shortest digits of a positive, finite value at buffer[MAX_LENGTH] with Grisu2.
+	 *
+	 * @return the number of digits in the low 8 bits, and above them the power of ten of the last digit.
+	 */
+	private static int digits(double value, char[] buffer) {
+		long bits = Double.doubleToRawLongBits(value) ;
+		int biased = (int)(bits >>> 52) & 0x7FF ;
+		long f = bits & SIGNIFICAND_MASK ;
+		int e ;
+		if(biased != 0) {
+			f += HIDDEN_BIT ;
+			e = biased - EXPONENT_BIAS ;
+		} else {
+			e = MIN_EXPONENT ;
+		}
+
+		//boundaries halfway to the neighbouring doubles, normalized to the exponent of the upper one
+		long plusF = (f << 1) + 1 ;
+		int plusE = e - 1 ;
+		int shift = Long.numberOfLeadingZeros(plusF) ;
+		plusF <<= shift ;
+		plusE -= shift ;
+		long minusF ;
+		int minusE ;
+		if(f == HIDDEN_BIT) {
+			minusF = (f << 2) - 1 ;
+			minusE = e - 2 ;
+		} else {
+			minusF = (f << 1) - 1 ;
+			minusE = e - 1 ;
+		}
+		minusF <<= minusE - plusE ;
+
+		//a cached power of ten bringing the upper boundary's exponent into [-60, -32]
+		double dk = (-61 - plusE) * 0.30102999566398114 + 347 ;
+		int k = (int)dk ;
+		if(dk - k > 0.0)
+			k++ ;
+		int index = (k >> 3) + 1 ;
+		int decimalExponent = -(-348 + index * 8) ;
+		long cf = CACHED_POWERS_F[index] ;
+		int ce = CACHED_POWERS_E[index] ;
+
+		shift = Long.numberOfLeadingZeros(f) ;
+		long w = multiply(f << shift, cf) ;
+		long wp = multiply(plusF, cf) - 1 ;
+		long wm = multiply(minusF, cf) + 1 ;
+		int oneE = plusE + ce + 64 ;
+
+		return generate(w, wp, wp - wm, -oneE, buffer, decimalExponent) ;
+	}
+
+	/**
+	 * Generates the digits of mp (the scaled upper boundary, with binary exponent -shift) until they are within delta of it.
+	 */
+	private static int generate(long w, long mp, long delta, int shift, char[] buffer, int decimalExponent) {
+		long one = 1L << shift ;
+		long wpw = mp - w ;
+		long p1 = mp >>> shift ;
+		long p2 = mp & (one - 1) ;
+		int kappa = decimalDigits(p1) ;
+		int length = 0 ;
+		while(kappa > 0) {
+			long d = p1 / POW10[kappa - 1] ;
+			p1 %= POW10[kappa - 1] ;
+			if(d != 0 || length != 0)
+				buffer[MAX_LENGTH + length++] = (char)('0' + d) ;
+			kappa-- ;
+			long rest = (p1 << shift) + p2 ;
+			if(unsignedLessOrEqual(rest, delta)) {
+				round(buffer, length, delta, rest, POW10[kappa] << shift, wpw) ;
+				return ((decimalExponent + kappa) << 8) | length ;
+			}
+		}
+		while(true) {
+			p2 *= 10 ;
+			delta *= 10 ;
+			long d = p2 >>> shift ;
+			if(d != 0 || length != 0)
+				buffer[MAX_LENGTH + length++] = (char)('0' + d) ;
+			p2 &= one - 1 ;
+			kappa-- ;
+			if(unsignedLess(p2, delta)) {
+				round(buffer, length, delta, p2, one, wpw * (-kappa < 10 ? POW10[-kappa] : 0)) ;
+				return ((decimalExponent + kappa) << 8) | length ;
+			}
+		}
+	}
+
+	/**
+	 * Moves the last digit down while the result stays within delta and gets closer to the exact value.
+	 */
+	private static void round(char[] buffer, int length, long delta, long rest, long tenKappa, long wpw) {
+		while(unsignedLess(rest, wpw) && unsignedLessOrEqual(tenKappa, delta - rest) &&
+				(unsignedLess(rest + tenKappa, wpw) || unsignedLess(rest + tenKappa - wpw, wpw - rest))) {
+			buffer[MAX_LENGTH + length - 1]-- ;
+			rest += tenKappa ;
+		}
+	}
+
+	/**
+	 * @return the high 64 bits of the unsigned 128-bit product of a and b, rounded.
+	 */
+	private static long multiply(long a, long b) {
+		long aHigh = a >>> 32 ;
+		long aLow = a & 0xFFFFFFFFL ;
+		long bHigh = b >>> 32 ;
+		long bLow = b & 0xFFFFFFFFL ;
+		long hh = aHigh * bHigh ;
+		long lh = aLow * bHigh ;
+		long hl = aHigh * bLow ;
+		long ll = aLow * bLow ;
+		long middle = (ll >>> 32) + (hl & 0xFFFFFFFFL) + (lh & 0xFFFFFFFFL) ;
+		middle += 1L << 31 ;
+		return hh + (hl >>> 32) + (lh >>> 32) + (middle >>> 32) ;
+	}
+
+	private static int decimalDigits(long n) {
+		int digits = 1 ;
+		while(digits < 10 && n >= POW10[digits])
+			digits++ ;
+		return digits ;
+	}
+
+	private static boolean unsignedLess(long a, long b) {
+		return a + Long.MIN_VALUE < b + Long.MIN_VALUE ;
+	}
+
+	private static boolean unsignedLessOrEqual(long a, long b) {
+		return a + Long.MIN_VALUE <= b + Long.MIN_VALUE ;
+	}
+
+}
@@ -0,0 +1,510 @@
+package ca.fwe.units;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * Reads quantities from JSON as written by JsonQuantityWriter, pulling one value at a time from the stream without building a
+ * tree. Three shapes are understood:
+ * <pre>
+ * {"value": 12.5, "unit": "&amp;km/&amp;hr"}              a Number, read with readNumber()
+ * "&amp;km/&amp;hr" or "km/h"                          a Unit, read with readUnit()
+ * {"unit": "&amp;m/&amp;", "values": [1.5, 2, null]}   a column, read with readColumn()
+ * </pre>
+ * Arrays of these are read with beginArray(), hasNext() and endArray(), and readNumbers() reads a run of Numbers from an array
+ * straight into primitive arrays. Unit strings starting with '&amp;' are decoded with Unit.valueOf(), others with Unit.parse(). Each
+ * distinct unit string is decoded once per reader, and values are parsed from the character buffer, so reading a large array
+ * creates no objects per value. Other fields in objects are skipped, a missing or null value is read as NaN and a missing unit
+ * as a dimensionless unit.
+ *
+ * @author Dewey Dunnington
+ *
+ */
+public class JsonQuantityReader implements Closeable {
+
+	private static final int BUFFER_SIZE = 1 << 16 ;
+
+	private final Reader in ;
+	private char[] buffer = new char[BUFFER_SIZE] ;
+	private CharBuffer chars = CharBuffer.wrap(buffer) ;
+	private int position = 0 ;
+	private int limit = 0 ;
+	private boolean eof = false ;
+	private long consumed = 0 ;
+
+	//for each open array, whether an element has been read and a ',' is expected before the next
+	private boolean[] elements = new boolean[16] ;
+	private int depth = 0 ;
+
+	//for each container open within a value being skipped, whether it is an object and whether an element has been skipped
+	private boolean[] skipObjects = new boolean[16] ;
+	private boolean[] skipStarted = new boolean[16] ;
+
+	//the last string read, with escapes decoded
+	private char[] text = new char[64] ;
+	private int textLength = 0 ;
+	private final UnitTable units = new UnitTable() ;
+
+	//the value and unit of the last object read by readQuantity()
+	private double value ;
+	private Unit unit ;
+
+	public JsonQuantityReader(Reader in) {
+		this.in = in ;
+	}
+
+	/**
+	 * Reads an object such as {"value": 12.5, "unit": "&amp;km/&amp;hr"}.
+	 *
+	 * @return the Number, with its value in the unit given.
+	 * @throws IOException if reading fails or the next value is not such an object.
+	 */
+	public Number readNumber() throws IOException {
+		readQuantity() ;
+		return new Number(value, unit) ;
+	}
+
+	/**
+	 * Reads objects such as {"value": 12.5, "unit": "&amp;km/&amp;hr"} from the array opened with beginArray() until max have been
+	 * read or the array ends, without creating a Number for each.
+	 *
+	 * @param siValues receives the SI value of each object.
+	 * @param unitIds receives the id of the unit of each object (see Unit.forId()). The reader keeps the units it has decoded, so
+	 * the ids stay valid for as long as the reader is reachable.
+	 * @param offset index in both arrays of the first object read.
+	 * @param max the most objects to read.
+	 * @return the number of objects read, -1 if the array ended before any was read.
+	 * @throws IOException if reading fails or an element is not such an object.
+	 */
+	public int readNumbers(double[] siValues, int[] unitIds, int offset, int max) throws IOException {
+		int count = 0 ;
+		while(count < max && hasNext()) {
+			readQuantity() ;
+			siValues[offset + count] = value * unit.getConversionValue() + unit.getOffset() ;
+			unitIds[offset + count] = unit.getId() ;
+			count++ ;
+		}
+		return count == 0 && max > 0 ? -1 : count ;
+	}
+
+	/**
+	 * Reads a string naming a unit, such as "&amp;km/&amp;hr" or "km/h".
+	 *
+	 * @throws IOException if reading fails, the next value is not a string or the string is not a unit (including units that raise
+	 * a dimension to a power beyond +/-Unit.MAX_EXPONENT).
+	 */
+	public Unit readUnit() throws IOException {
+		expectString() ;
+		return units.get(text, textLength) ;
+	}
+
+	/**
+	 * Reads an object such as {"unit": "&amp;m/&amp;", "values": [1.5, 2, null]}, in which null values are read as NaN.
+	 *
+	 * @return the values as a column in the unit given.
+	 * @throws IOException if reading fails or the next value is not such an object.
+	 */
+	public QuantityColumn readColumn() throws IOException {
+		Unit columnUnit = null ;
+		double[] values = null ;
+		int count = 0 ;
+		expect('{') ;
+		boolean first = true ;
+		while(peek() != '}') {
+			if(!first)
+				expect(',') ;
+			first = false ;
+			expectString() ;
+			expect(':') ;
+			if(equals(text, textLength, "unit")) {
+				columnUnit = readUnit() ;
+			} else if(equals(text, textLength, "values")) {
+				values = new double[1024] ;
+				expect('[') ;
+				while(peek() != ']') {
+					if(count > 0)
+						expect(',') ;
+					if(count == values.length)
+						values = Arrays.copyOf(values, count * 2) ;
+					values[count++] = readDouble() ;
+				}
+				position++ ;
+			} else {
+				skipValue() ;
+			}
+		}
+		position++ ;
+		return new QuantityColumn(values == null ? new double[0] : Arrays.copyOf(values, count),
+				columnUnit == null ? new Unit() : columnUnit) ;
+	}
+
+	/**
+	 * Reads the '[' starting an array.
+	 *
+	 * @throws IOException if reading fails or the next value is not an array.
+	 */
+	public void beginArray() throws IOException {
+		expect('[') ;
+		if(depth == elements.length)
+			elements = Arrays.copyOf(elements, depth * 2) ;
+		elements[depth++] = false ;
+	}
+
+	/**
+	 * @return true if the array opened with beginArray() has another element, which is then read with one of the read methods.
+	 * @throws IOException if reading fails or the elements are not separated by ','.
+	 */
+	public boolean hasNext() throws IOException {
+		if(depth == 0)
+			throw new IllegalStateException("No array has been begun") ;
+		char c = peek() ;
+		if(c == ']')
+			return false ;
+		if(elements[depth - 1]) {
+			if(c != ',')
+				throw error("Expected ',' or ']'") ;
+			position++ ;
+		}
+		elements[depth - 1] = true ;
+		return true ;
+	}
+
+	/**
+	 * Reads the ']' ending the array opened with beginArray(), skipping any elements not yet read.
+	 *
+	 * @throws IOException if reading fails.
+	 */
+	public void endArray() throws IOException {
+		while(hasNext())
+			skipValue() ;
+		position++ ;
+		depth-- ;
+	}
+
+	/**
+	 * Skips the next value, of any type.
+	 *
+	 * @throws IOException if reading fails or the next value is not valid JSON.
+	 */
+	public void skipValue() throws IOException {
+		//the containers open within the value, walked without recursion so that deep nesting cannot overflow the stack
+		int open = 0 ;
+		do {
+			char c = peek() ;
+			if(open > 0) {
+				boolean object = skipObjects[open - 1] ;
+				if(c == (object ? '}' : ']')) {
+					position++ ;
+					open-- ;
+					continue ;
+				}
+				if(skipStarted[open - 1])
+					expect(',') ;
+				skipStarted[open - 1] = true ;
+				if(object) {
+					expectString() ;
+					expect(':') ;
+				}
+				c = peek() ;
+			}
+			if(c == '{' || c == '[') {
+				position++ ;
+				if(open == skipObjects.length) {
+					skipObjects = Arrays.copyOf(skipObjects, open * 2) ;
+					skipStarted = Arrays.copyOf(skipStarted, open * 2) ;
+				}
+				skipObjects[open] = c == '{' ;
+				skipStarted[open] = false ;
+				open++ ;
+			} else if(c == '"') {
+				expectString() ;
+			} else {
+				int end = literalEnd() ;
+				if(end == position)
+					throw error("Unexpected '" + c + "'") ;
+				position = end ;
+			}
+		} while(open > 0) ;
+	}
+
+	/**
+	 * Reads an object with "value" and "unit" fields into value and unit.
+	 */
+	private void readQuantity() throws IOException {
+		value = Double.NaN ;
+		unit = null ;
+		expect('{') ;
+		boolean first = true ;
+		while(peek() != '}') {
+			if(!first)
+				expect(',') ;
+			first = false ;
+			expectString() ;
+			expect(':') ;
+			if(equals(text, textLength, "value"))
+				value = readDouble() ;
+			else if(equals(text, textLength, "unit"))
+				unit = readUnit() ;
+			else
+				skipValue() ;
+		}
+		position++ ;
+		if(unit == null)
+			unit = units.dimensionless() ;
+	}
+
+	/**
+	 * Reads a number or null, which is read as NaN.
+	 */
+	private double readDouble() throws IOException {
+		peek() ;
+		int end = literalEnd() ;
+		if(end - position == 4 && buffer[position] == 'n' && buffer[position + 1] == 'u' && buffer[position + 2] == 'l' &&
+				buffer[position + 3] == 'l') {
+			position = end ;
+			return Double.NaN ;
+		}
+		if(end == position || !DecimalParser.isDecimal(chars, position, end))
+			throw error("Expected a number") ;
+		double parsed = DecimalParser.parse(chars, position, end) ;
+		position = end ;
+		return parsed ;
+	}
+
+	/**
+	 * @return the index after the number or literal at position, reading more of the stream if it reaches the end of the buffer.
+	 */
+	private int literalEnd() throws IOException {
+		int i = position ;
+		while(true) {
+			for(; i<limit; i++) {
+				char c = buffer[i] ;
+				if(!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '-' || c == '+' ||
+						c == '.'))
+					return i ;
+			}
+			int scanned = i - position ;
+			if(!fill())
+				return limit ;
+			i = position + scanned ;
+		}
+	}
+
+	/**
+	 * Reads a string into text, decoding escapes.
+	 */
+	private void expectString() throws IOException {
+		expect('"') ;
+		textLength = 0 ;
+		while(true) {
+			//copy the run of plain characters up to the next quote, escape or end of buffer
+			int start = position ;
+			while(position < limit && buffer[position] != '"' && buffer[position] != '\\')
+				position++ ;
+			if(position > start) {
+				ensureText(position - start) ;
+				System.arraycopy(buffer, start, text, textLength, position - start) ;
+				textLength += position - start ;
+			}
+			if(position >= limit && !fill())
+				throw error("Unterminated string") ;
+			char c = buffer[position++] ;
+			if(c == '"') {
+				return ;
+			} else if(c == '\\') {
+				if(position >= limit && !fill())
+					throw error("Unterminated string") ;
+				char e = buffer[position++] ;
+				switch(e) {
+				case 'b': appendText('\b') ; break ;
+				case 'f': appendText('\f') ; break ;
+				case 'n': appendText('\n') ; break ;
+				case 'r': appendText('\r') ; break ;
+				case 't': appendText('\t') ; break ;
+				case 'u':
+					while(limit - position < 4) {
+						if(!fill())
+							throw error("Unterminated string") ;
+					}
+					int code = 0 ;
+					for(int i=0; i<4; i++) {
+						int digit = Character.digit(buffer[position++], 16) ;
+						if(digit < 0)
+							throw error("Invalid \\u escape") ;
+						code = code * 16 + digit ;
+					}
+					appendText((char)code) ;
+					break ;
+				default:
+					appendText(e) ;
+				}
+			} else {
+				//the end of the buffer was reached in the middle of a run
+				appendText(c) ;
+			}
+		}
+	}
+
+	private void appendText(char c) {
+		ensureText(1) ;
+		text[textLength++] = c ;
+	}
+
+	private void ensureText(int more) {
+		if(textLength + more > text.length)
+			text = Arrays.copyOf(text, Math.max(textLength + more, text.length * 2)) ;
+	}
+
+	private void expect(char c) throws IOException {
+		if(peek() != c)
+			throw error("Expected '" + c + "'") ;
+		position++ ;
+	}
+
+	/**
+	 * @return the next character that is not whitespace, without consuming it.
+	 */
+	private char peek() throws IOException {
+		while(true) {
+			if(position >= limit && !fill())
+				throw error("Unexpected end of input") ;
+			char c = buffer[position] ;
+			if(c != ' ' && c != '\n' && c != '\r' && c != '\t')
+				return c ;
+			position++ ;
+		}
+	}
+
+	private IOException error(String message) {
+		return new IOException(message + " at character " + (consumed + position)) ;
+	}
+
+	private static boolean equals(char[] a, int length, String b) {
+		if(length != b.length())
+			return false ;
+		for(int i=0; i<length; i++) {
+			if(a[i] != b.charAt(i))
+				return false ;
+		}
+		return true ;
+	}
+
+	/**
+	 * Moves unread characters to the start of the buffer, growing it if it is full, and reads more.
+	 *
+	 * @return false if no more characters could be read.
+	 */
+	private boolean fill() throws IOException {
+		if(eof)
+			return false ;
+		int remaining = limit - position ;
+		if(position == 0 && remaining == buffer.length) {
+			char[] grown = new char[buffer.length * 2] ;
+			System.arraycopy(buffer, 0, grown, 0, remaining) ;
+			buffer = grown ;
+			chars = CharBuffer.wrap(buffer) ;
+		} else if(position > 0) {
+			System.arraycopy(buffer, position, buffer, 0, remaining) ;
+		}
+		consumed += position ;
+		position = 0 ;
+		limit = remaining ;
+		int read = in.read(buffer, limit, buffer.length - limit) ;
+		if(read < 0) {
+			eof = true ;
+			return false ;
+		}
+		limit += read ;
+		return true ;
+	}
+
+	public void close() throws IOException {
+		in.close() ;
+	}
+
+	/**
+	 * The units decoded by this reader, found by the characters of their string so that a String is only created the first time
+	 * a unit string is seen.
+	 */
+	private class UnitTable {
+		private String[] keys = new String[16] ;
+		private Unit[] values = new Unit[16] ;
+		private int size = 0 ;
+		private Unit dimensionless ;
+
+		Unit get(char[] key, int length) throws IOException {
+			int mask = keys.length - 1 ;
+			int h = 0 ;
+			for(int i=0; i<length; i++) {
+				h = 31 * h + key[i] ;
+			}
+			int slot = spread(h) & mask ;
+			while(keys[slot] != null) {
+				if(JsonQuantityReader.equals(key, length, keys[slot]))
+					return values[slot] ;
+				slot = (slot + 1) & mask ;
+			}
+			String name = new String(key, 0, length) ;
+			Unit decoded = decode(name) ;
+			if(size * 2 >= keys.length)
+				grow() ;
+			put(name, decoded) ;
+			return decoded ;
+		}
+
+		Unit dimensionless() {
+			if(dimensionless == null)
+				dimensionless = new Unit() ;
+			return dimensionless ;
+		}
+
+		private Unit decode(String name) throws IOException {
+			if(name.length() == 0)
+				return dimensionless() ;
+			if(name.charAt(0) == '&') {
+				//valueOf() returns null for malformed strings and for powers beyond Unit.MAX_EXPONENT
+				Unit decoded = Unit.valueOf(name) ;
+				if(decoded == null)
+					throw error("Cannot decode unit \"" + name + "\"") ;
+				return decoded ;
+			}
+			try {
+				return Unit.parse(name) ;
+			} catch(IllegalArgumentException e) {
+				IOException wrapped = error("Cannot parse unit \"" + name + "\"") ;
+				wrapped.initCause(e) ;
+				throw wrapped ;
+			}
+		}
+
+		private void put(String key, Unit unit) {
+			int mask = keys.length - 1 ;
+			int slot = spread(key.hashCode()) & mask ;
+			while(keys[slot] != null)
+				slot = (slot + 1) & mask ;
+			keys[slot] = key ;
+			values[slot] = unit ;
+			size++ ;
+		}
+
+		private void grow() {
+			String[] oldKeys = keys ;
+			Unit[] oldValues = values ;
+			keys = new String[oldKeys.length * 2] ;
+			values = new Unit[oldKeys.length * 2] ;
+			size = 0 ;
+			for(int i=0; i<oldKeys.length; i++) {
+				if(oldKeys[i] != null)
+					put(oldKeys[i], oldValues[i]) ;
+			}
+		}
+
+		private int spread(int h) {
+			return h ^ (h >>> 16) ;
+		}
+	}
+
+}
@@ -0,0 +1,239 @@
+package ca.fwe.units;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Writes quantities as JSON in the shapes read by JsonQuantityReader: a Number as {"value": 12.5, "unit": "&amp;km/&amp;hr"}, a
+ * Unit as the string of Unit.encode() and a column as {"unit": "&amp;m/&amp;", "values": [1.5, 2.0]}, with beginArray() and
+ * endArray() to group them. Values are written in their own unit with the fewest digits that read back to the same double, and
+ * NaN and infinite values, which JSON cannot hold, are written as null. Values written outside an array are written one to a line.
+ * Output is collected in an internal buffer and passed to the Writer in large blocks.
+ *
+ * @author Dewey Dunnington
+ *
+ */
+public class JsonQuantityWriter implements Closeable, Flushable {
+
+	private static final int BUFFER_SIZE = 1 << 16 ;
+	private static final char[] HEX = "0123456789abcdef".toCharArray() ;
+
+	private final Writer out ;
+	private final char[] buffer = new char[BUFFER_SIZE] ;
+	private final char[] digits = new char[DoubleFormatter.MAX_LENGTH * 2] ;
+	private int length = 0 ;
+
+	//for each open array, whether an element has been written; elements[0] is for values outside any array
+	private boolean[] elements = new boolean[16] ;
+	private int depth = 0 ;
+
+	public JsonQuantityWriter(Writer out) {
+		this.out = out ;
+	}
+
+	/**
+	 * Writes number as {"value": ..., "unit": "..."}.
+	 *
+	 * @throws IOException if writing fails.
+	 */
+	public void writeNumber(Number number) throws IOException {
+		writeNumber(number.getValue(), number.getUnit()) ;
+	}
+
+	/**
+	 * Writes {"value": value, "unit": "..."} without creating a Number.
+	 *
+	 * @param value the value in unit.
+	 * @param unit
+	 * @throws IOException if writing fails.
+	 */
+	public void writeNumber(double value, Unit unit) throws IOException {
+		separate() ;
+		append("{\"value\":") ;
+		appendDouble(value) ;
+		append(",\"unit\":") ;
+		appendString(unit.encode()) ;
+		append('}') ;
+	}
+
+	/**
+	 * Writes numbers from arrays of SI values and unit ids, as read by JsonQuantityReader.readNumbers().
+	 *
+	 * @param siValues
+	 * @param unitIds the id of the unit of each value (see Unit.getId()).
+	 * @param offset index in both arrays of the first value.
+	 * @param count number of values.
+	 * @throws IOException if writing fails.
+	 * @throws IllegalArgumentException if a unit id does not belong to a unit.
+	 */
+	public void writeNumbers(double[] siValues, int[] unitIds, int offset, int count) throws IOException {
+		for(int i=offset; i<offset + count; i++) {
+			Unit unit = Unit.forId(unitIds[i]) ;
+			if(unit == null)
+				throw new IllegalArgumentException("Invalid unit id " + unitIds[i]) ;
+			writeNumber((siValues[i] - unit.getOffset()) / unit.getConversionValue(), unit) ;
+		}
+	}
+
+	/**
+	 * Writes unit as the string of Unit.encode().
+	 *
+	 * @throws IOException if writing fails.
+	 */
+	public void writeUnit(Unit unit) throws IOException {
+		separate() ;
+		appendString(unit.encode()) ;
+	}
+
+	/**
+	 * Writes column as {"unit": "...", "values": [...]}.
+	 *
+	 * @throws IOException if writing fails.
+	 */
+	public void writeColumn(QuantityColumn column) throws IOException {
+		Unit unit = column.getUnit() ;
+		separate() ;
+		append("{\"unit\":") ;
+		appendString(unit.encode()) ;
+		append(",\"values\":[") ;
+		for(int i=0; i<column.length(); i++) {
+			if(i > 0)
+				append(',') ;
+			appendDouble(column.getValue(i)) ;
+		}
+		append("]}") ;
+	}
+
+	/**
+	 * Writes {"unit": "...", "values": [...]} from an array of values in unit.
+	 *
+	 * @param unit
+	 * @param values
+	 * @param offset index of the first value to write.
+	 * @param count number of values.
+	 * @throws IOException if writing fails.
+	 */
+	public void writeColumn(Unit unit, double[] values, int offset, int count) throws IOException {
+		separate() ;
+		append("{\"unit\":") ;
+		appendString(unit.encode()) ;
+		append(",\"values\":[") ;
+		for(int i=offset; i<offset + count; i++) {
+			if(i > offset)
+				append(',') ;
+			appendDouble(values[i]) ;
+		}
+		append("]}") ;
+	}
+
+	/**
+	 * Writes the '[' starting an array.
+	 *
+	 * @throws IOException if writing fails.
+	 */
+	public void beginArray() throws IOException {
+		separate() ;
+		append('[') ;
+		if(++depth == elements.length)
+			elements = Arrays.copyOf(elements, depth * 2) ;
+		elements[depth] = false ;
+	}
+
+	/**
+	 * Writes the ']' ending the array opened by the last call to beginArray().
+	 *
+	 * @throws IOException if writing fails.
+	 */
+	public void endArray() throws IOException {
+		if(depth == 0)
+			throw new IllegalStateException("No array has been begun") ;
+		depth-- ;
+		append(']') ;
+	}
+
+	/**
+	 * Writes the separator before a value: ',' inside an array, a new line between values outside one.
+	 */
+	private void separate() throws IOException {
+		if(elements[depth])
+			append(depth == 0 ? '\n' : ',') ;
+		elements[depth] = true ;
+	}
+
+	private void appendDouble(double value) throws IOException {
+		if(Double.isNaN(value) || Double.isInfinite(value)) {
+			append("null") ;
+			return ;
+		}
+		int n = DoubleFormatter.formatShortest(value, digits) ;
+		if(length + n > buffer.length)
+			flushBuffer() ;
+		System.arraycopy(digits, 0, buffer, length, n) ;
+		length += n ;
+	}
+
+	private void appendString(String s) throws IOException {
+		append('"') ;
+		int plain = 0 ;
+		while(plain < s.length() && s.charAt(plain) >= 0x20 && s.charAt(plain) != '"' && s.charAt(plain) != '\\')
+			plain++ ;
+		append(s, 0, plain) ;
+		for(int i=plain; i<s.length(); i++) {
+			char c = s.charAt(i) ;
+			if(c == '"' || c == '\\') {
+				append('\\') ;
+				append(c) ;
+			} else if(c < 0x20) {
+				append("\\u00") ;
+				append(HEX[c >> 4]) ;
+				append(HEX[c & 0xf]) ;
+			} else {
+				append(c) ;
+			}
+		}
+		append('"') ;
+	}
+
+	private void append(char c) throws IOException {
+		if(length == buffer.length)
+			flushBuffer() ;
+		buffer[length++] = c ;
+	}
+
+	private void append(String s) throws IOException {
+		append(s, 0, s.length()) ;
+	}
+
+	/**
+	 * Appends the characters of s from start to end, flushing the buffer whenever it fills.
+	 */
+	private void append(String s, int start, int end) throws IOException {
+		while(start < end) {
+			if(length == buffer.length)
+				flushBuffer() ;
+			int stop = Math.min(end, start + buffer.length - length) ;
+			s.getChars(start, stop, buffer, length) ;
+			length += stop - start ;
+			start = stop ;
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		out.write(buffer, 0, length) ;
+		length = 0 ;
+	}
+
+	public void flush() throws IOException {
+		flushBuffer() ;
+		out.flush() ;
+	}
+
+	public void close() throws IOException {
+		flushBuffer() ;
+		out.close() ;
+	}
+
+}
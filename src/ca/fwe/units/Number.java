@@ -1,5 +1,10 @@
 package ca.fwe.units;
 
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 
 /**
  * A class representing a value with associated Unit. The value of the Number is stored in SI units and converted whenever the
@@ -87,7 +92,7 @@ public class Number {
 	 * @throws UnitException if units are of different dimensions.
 	 */
 	public void setUnit(Unit newUnit) throws UnitException {
-		if(newUnit.getUnitType() == this.getUnit().getUnitType()) {
+		if(newUnit.getDimensionKey() == this.getUnit().getDimensionKey()) {
 			this.unit = newUnit ;
 		} else {
 			throw new UnitException(this.unit, newUnit) ;
@@ -100,25 +105,26 @@ public class Number {
 	 * @param newValue
 	 */
 	private void setValue(double newValue) {
-		this.SIvalue = newValue * this.getUnit().getConversionValue() ;
+		this.SIvalue = newValue * this.getUnit().getConversionValue() + this.getUnit().getOffset() ;
 	}
 
 	/**
 	 * @return the value of this Number, in units described by getUnit().
 	 */
 	public double getValue() {
-		return SIvalue / this.getUnit().getConversionValue() ;
+		return (SIvalue - this.getUnit().getOffset()) / this.getUnit().getConversionValue() ;
 	}
 
 	/**
 	 * @return a String version of the float value of this, in units specified by getUnit(). Blank if value is Double.NaN.
 	 */
 	public String toString() {
-		if(!Double.isNaN(this.getValue())) {
+		double value = this.getValue() ;
+		if(!Double.isNaN(value)) {
 			if(this.isInteger()) {
-				return new Long(Math.round(this.getValue())).toString() ;
+				return Long.toString(Math.round(value)) ;
 			} else {
-				return new Float(this.getValue()).toString() ;
+				return Float.toString((float)value) ;
 			}
 		} else {
 			return "" ;
@@ -130,13 +136,31 @@ public class Number {
 	 * @return true if Math.round(getValue()) is equal to getValue() (as judged by rounding to float), false otherwise.
 	 */
 	public boolean isInteger() {
-		Float value = new Float(this.getValue()) ;
+		float value = (float)this.getValue() ;
 		long intValue = Math.round(value) ;
-		if(value == intValue) {
-			return true ;
-		} else {
-			return false ;
-		}
+		return value == intValue ;
+	}
+
+	/**
+	 * @param significantDigits from 1 to 17.
+	 * @return the value of this Number in units of getUnit(), rounded half up to significantDigits significant digits and
+	 * without trailing zeros, e.g. "12", "0.333" or "1.5E-6".
+	 */
+	public String format(int significantDigits) {
+		StringBuilder s = new StringBuilder(DoubleFormatter.MAX_LENGTH) ;
+		this.formatTo(s, significantDigits) ;
+		return s.toString() ;
+	}
+
+	/**
+	 * Appends format(significantDigits) to out without creating any objects.
+	 * 
+	 * @param out
+	 * @param significantDigits from 1 to 17.
+	 */
+	public void formatTo(StringBuilder out, int significantDigits) {
+		char[] buffer = DoubleFormatter.buffer() ;
+		out.append(buffer, 0, DoubleFormatter.formatSignificant(this.getValue(), significantDigits, buffer)) ;
 	}
 
 	/**
@@ -145,8 +169,8 @@ public class Number {
 	 * @throws UnitException if units are of different dimensions
 	 */
 	public double getValue(Unit otherUnit) throws UnitException {
-		if(otherUnit.getUnitType() == this.unit.getUnitType()) {
-			return this.getSIValue() / otherUnit.getConversionValue() ;
+		if(otherUnit.getDimensionKey() == this.unit.getDimensionKey()) {
+			return (this.getSIValue() - otherUnit.getOffset()) / otherUnit.getConversionValue() ;
 		} else {
 			throw new UnitException(this.unit, otherUnit) ;
 		}
@@ -199,12 +223,14 @@ public class Number {
 	 * Add another number to this number.
 	 * 
 	 * @param otherNumber the number to add.
-	 * @return the sum of these two numbers, expressed in the Unit of this number.
+	 * @return the sum of these two numbers, expressed in the Unit of this number. If otherNumber is in a unit with an offset (such
+	 * as degrees Celcius) it is added as a difference in that unit, so 20 deg C plus 10 deg C is 30 deg C.
 	 * @throws UnitException if the units are in different dimensions.
 	 */
 	public Number add(Number otherNumber) throws UnitException {
-		if(otherNumber.getUnit().getUnitType() == this.unit.getUnitType()) {
-			return new Number(this.getSIValue() + otherNumber.getSIValue(), this.getUnit(), true) ;
+		if(otherNumber.getUnit().getDimensionKey() == this.unit.getDimensionKey()) {
+			double difference = otherNumber.getSIValue() - otherNumber.getUnit().getOffset() ;
+			return new Number(this.getSIValue() + difference, this.getUnit(), true) ;
 		} else {
 			throw new UnitException(this.unit, otherNumber.getUnit()) ;
 		}
@@ -214,13 +240,17 @@ public class Number {
 	 * Subtract a number from this number
 	 * 
 	 * @param otherNumber the number to subtract.
-	 * @return the difference between these two numbers, expressed in the Unit of this number.
+	 * @return the difference between these two numbers, expressed in the Unit of this number. If both numbers are in units with
+	 * an offset (such as degrees Celcius), the difference is expressed in this number's Unit.getDeltaUnit().
 	 * @throws UnitException if the units are in different dimensions.
 	 */
 	
 	public Number subtract(Number otherNumber) throws UnitException {
-		if(otherNumber.getUnit().getUnitType() == this.unit.getUnitType()) {
-			return new Number(this.getSIValue() - otherNumber.getSIValue(), this.getUnit(), true) ;
+		if(otherNumber.getUnit().getDimensionKey() == this.unit.getDimensionKey()) {
+			Unit resultUnit = this.getUnit() ;
+			if(resultUnit.getOffset() != 0 && otherNumber.getUnit().getOffset() != 0)
+				resultUnit = resultUnit.getDeltaUnit() ;
+			return new Number(this.getSIValue() - otherNumber.getSIValue(), resultUnit, true) ;
 		} else {
 			throw new UnitException(this.unit, otherNumber.getUnit()) ;
 		}
@@ -235,19 +265,84 @@ public class Number {
 
 
 	/**
-	 * @return a string that can be decoded by Number.ValueOf()
+	 * @return a string that can be decoded by Number.ValueOf(). The value is written with the fewest digits that decode to
+	 * the same double.
 	 */
 	public String encode() {
-		String encodedUnit = this.getUnit().encode() ;
-		String value = new Double(this.getValue()).toString() ;
-		return value + SEPARATOR + encodedUnit ;
+		StringBuilder s = new StringBuilder(DoubleFormatter.MAX_LENGTH + 16) ;
+		this.encodeTo(s) ;
+		return s.toString() ;
+	}
+
+	/**
+	 * Appends encode() to out without creating any objects.
+	 * 
+	 * @param out
+	 */
+	public void encodeTo(StringBuilder out) {
+		char[] buffer = DoubleFormatter.buffer() ;
+		out.append(buffer, 0, DoubleFormatter.formatShortest(this.getValue(), buffer)) ;
+		out.append(SEPARATOR).append(this.getUnit().encode()) ;
+	}
+
+	/**
+	 * Appends encode() to out without creating any objects.
+	 * 
+	 * @param out
+	 * @throws IOException if out throws it.
+	 */
+	public void encodeTo(Appendable out) throws IOException {
+		char[] buffer = DoubleFormatter.buffer() ;
+		int length = DoubleFormatter.formatShortest(this.getValue(), buffer) ;
+		for(int i=0; i<length; i++) {
+			out.append(buffer[i]) ;
+		}
+		out.append(SEPARATOR).append(this.getUnit().encode()) ;
+	}
+
+	/**
+	 * Writes encode() to out as UTF-8 at its position, without creating any objects.
+	 * 
+	 * @param out
+	 * @throws BufferOverflowException if out does not have room, in which case nothing is written.
+	 */
+	public void encodeTo(ByteBuffer out) {
+		char[] buffer = DoubleFormatter.buffer() ;
+		int length = DoubleFormatter.formatShortest(this.getValue(), buffer) ;
+		String unit = this.getUnit().encode() ;
+		int size = length + SEPARATOR.length() ;
+		for(int i=0; i<unit.length(); i++) {
+			char c = unit.charAt(i) ;
+			size += c < 0x80 ? 1 : c < 0x800 ? 2 : 3 ;
+		}
+		if(out.remaining() < size)
+			throw new BufferOverflowException() ;
+		for(int i=0; i<length; i++) {
+			out.put((byte)buffer[i]) ;
+		}
+		for(int i=0; i<SEPARATOR.length(); i++) {
+			out.put((byte)SEPARATOR.charAt(i)) ;
+		}
+		for(int i=0; i<unit.length(); i++) {
+			char c = unit.charAt(i) ;
+			if(c < 0x80) {
+				out.put((byte)c) ;
+			} else if(c < 0x800) {
+				out.put((byte)(0xC0 | (c >> 6))) ;
+				out.put((byte)(0x80 | (c & 0x3F))) ;
+			} else {
+				out.put((byte)(0xE0 | (c >> 12))) ;
+				out.put((byte)(0x80 | ((c >> 6) & 0x3F))) ;
+				out.put((byte)(0x80 | (c & 0x3F))) ;
+			}
+		}
 	}
 	
 	
 	public boolean equals(Object otherObject) {
 		if(otherObject instanceof Number) {
 			Number otherNumber = (Number) otherObject ;
-			if(this.getSIValue() == otherNumber.getSIValue() && this.getUnit().getUnitType() == otherNumber.getUnit().getUnitType()) {
+			if(this.getSIValue() == otherNumber.getSIValue() && this.getUnit().getDimensionKey() == otherNumber.getUnit().getDimensionKey()) {
 				return true ;
 			} else {
 				return false ;
@@ -263,22 +358,84 @@ public class Number {
 	 * @return the Number object encoded in the String.
 	 */
 	public static Number valueOf(String encoded) {
-		String[] parts = encoded.split(SEPARATOR) ;
-		if(parts.length >= 2) {
-			try {
-				double value = new Double(parts[0]) ;
-				Unit unit = Unit.valueOf(parts[1]) ;
-				if(unit != null) {
-					return new Number(value, unit) ;
-				} else {
-					return new Number(value) ;
-				}
-			} catch(NumberFormatException e) {
-				return null ;
+		return decode(encoded, 0, encoded.length()) ;
+	}
+
+	/**
+	 * Decodes the Number written by encode() in chars from index from, inclusive, to index to, exclusive. The value is parsed
+	 * without creating a String, and units are remembered by their text for each thread, so decoding many values in the same
+	 * units creates only the Number objects.
+	 * 
+	 * @param chars
+	 * @param from
+	 * @param to
+	 * @return the Number, null if the characters are not an encoded Number.
+	 */
+	public static Number decode(CharSequence chars, int from, int to) {
+		int comma = from ;
+		while(comma < to && chars.charAt(comma) != ',')
+			comma++ ;
+		int unitEnd = comma + 1 ;
+		while(unitEnd < to && chars.charAt(unitEnd) != ',')
+			unitEnd++ ;
+		if(comma == from || unitEnd > to || unitEnd == comma + 1)
+			return null ;
+		try {
+			double value = DecimalParser.parse(chars, from, comma) ;
+			Unit unit = units.get().get(chars, comma + 1, unitEnd) ;
+			if(unit != null) {
+				return new Number(value, unit) ;
+			} else {
+				return new Number(value) ;
 			}
-		} else {
+		} catch(NumberFormatException e) {
 			return null ;
 		}
 	}
 
+	private static final ThreadLocal<UnitTextCache> units = new ThreadLocal<UnitTextCache>() {
+		protected UnitTextCache initialValue() {
+			return new UnitTextCache() ;
+		}
+	} ;
+
+	/**
+	 * A small direct-mapped cache from encoded unit text to the decoded Unit, searched by a range of characters. Emptied when
+	 * BaseUnit.register() changes the abbreviations that text can decode to.
+	 */
+	private static class UnitTextCache {
+		private static final int SIZE = 64 ;
+
+		private final String[] keys = new String[SIZE] ;
+		private final Unit[] values = new Unit[SIZE] ;
+		private BaseUnit[] registered ;
+
+		Unit get(CharSequence chars, int from, int to) {
+			BaseUnit[] current = BaseUnit.getRegistered() ;
+			if(current != registered) {
+				Arrays.fill(keys, null) ;
+				Arrays.fill(values, null) ;
+				registered = current ;
+			}
+			int h = 0 ;
+			for(int i=from; i<to; i++) {
+				h = 31 * h + chars.charAt(i) ;
+			}
+			int slot = (h ^ (h >>> 16)) & (SIZE - 1) ;
+			String key = keys[slot] ;
+			if(key != null && key.length() == to - from) {
+				int i = 0 ;
+				while(i < key.length() && key.charAt(i) == chars.charAt(from + i))
+					i++ ;
+				if(i == key.length())
+					return values[slot] ;
+			}
+			key = chars.subSequence(from, to).toString() ;
+			Unit unit = Unit.valueOf(key) ;
+			keys[slot] = key ;
+			values[slot] = unit ;
+			return unit ;
+		}
+	}
+
 }
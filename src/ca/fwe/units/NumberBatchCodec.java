@@ -0,0 +1,343 @@
+package ca.fwe.units;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes and reads batches of values with units in a compact binary form, as an alternative to Number.encode() for large numbers
+ * of values. Each distinct unit in a batch is written once, in a dictionary at the start of the batch, and each value is written as
+ * its index in the dictionary followed by its SI value as a raw double. Values are passed as arrays of SI values and unit ids (see
+ * Unit.getId() and Unit.forId()) so that no object is created for each value.
+ * <p>
+ * A batch is laid out as follows, where varint is an unsigned integer written seven bits to a byte, lowest bits first, with the
+ * high bit set on every byte but the last:
+ * <pre>
+ * varint  number of values
+ * varint  number of units in the dictionary
+ *         for each unit: varint length, then the UTF-8 bytes of Unit.encode()
+ *         for each value: varint dictionary index
+ *         for each value: 8-byte IEEE 754 SI value, in the byte order of the buffer
+ * </pre>
+ * Unit ids are only meaningful within one process, which is why the dictionary holds encoded units. The most recently read units
+ * are remembered by their text, so reading many batches with the same units parses each unit once. The codec keeps the units of
+ * the last batch it read, so the ids it returns can be passed to Unit.forId() at least until the next read.
+ * <p>
+ * A codec holds working arrays and must only be used by one thread at a time.
+ *
+ * @author Dewey Dunnington
+ *
+ */
+public class NumberBatchCodec {
+
+	private static final String CHARSET = "UTF-8" ;
+
+	/**
+	 * Number of unit strings remembered between batches.
+	 */
+	private static final int DECODED_CACHE_SIZE = 256 ;
+
+	//open-addressed table of the dictionary index of each unit id in the batch being written, with entries valid where
+	//stamps[slot] == stamp. Its size is a power of 2, at least twice the dictionary size.
+	private int[] slotIds = new int[64] ;
+	private int[] slotIndexes = new int[64] ;
+	private int[] stamps = new int[64] ;
+	private int stamp = 0 ;
+	private int[] dictionary = new int[16] ;
+	private int dictionarySize = 0 ;
+
+	private final Map<String, Unit> decoded = new LinkedHashMap<String, Unit>(DECODED_CACHE_SIZE * 2, 0.75f, true) {
+		private static final long serialVersionUID = 1L ;
+
+		protected boolean removeEldestEntry(Map.Entry<String, Unit> eldest) {
+			return size() > DECODED_CACHE_SIZE ;
+		}
+	} ;
+	private Unit[] readDictionary = new Unit[16] ;
+	private int[] readIds = new int[16] ;
+
+	/**
+	 * @param siValues
+	 * @param unitIds the id of the unit of each value.
+	 * @param offset index in both arrays of the first value.
+	 * @param count number of values.
+	 * @return the number of bytes write() would use for these values.
+	 */
+	public int encodedSize(double[] siValues, int[] unitIds, int offset, int count) {
+		buildDictionary(unitIds, offset, count) ;
+		int size = varintSize(count) + varintSize(dictionarySize) ;
+		for(int i=0; i<dictionarySize; i++) {
+			int length = bytes(dictionary[i]).length ;
+			size += varintSize(length) + length ;
+		}
+		for(int i=offset; i<offset + count; i++) {
+			size += varintSize(indexOf(unitIds[i])) ;
+		}
+		return size + count * 8 ;
+	}
+
+	/**
+	 * Writes a batch at the position of out.
+	 *
+	 * @param siValues
+	 * @param unitIds the id of the unit of each value.
+	 * @param offset index in both arrays of the first value.
+	 * @param count number of values.
+	 * @param out
+	 * @return the number of bytes written.
+	 * @throws BufferOverflowException if out does not have room for the batch, in which case its position is unchanged.
+	 * @throws IllegalArgumentException if a unit id does not belong to a unit.
+	 */
+	public int write(double[] siValues, int[] unitIds, int offset, int count, ByteBuffer out) {
+		int start = out.position() ;
+		try {
+			buildDictionary(unitIds, offset, count) ;
+			putVarint(out, count) ;
+			putVarint(out, dictionarySize) ;
+			for(int i=0; i<dictionarySize; i++) {
+				byte[] text = bytes(dictionary[i]) ;
+				putVarint(out, text.length) ;
+				out.put(text) ;
+			}
+			for(int i=offset; i<offset + count; i++) {
+				putVarint(out, indexOf(unitIds[i])) ;
+			}
+			if(out.remaining() < count * 8)
+				throw new BufferOverflowException() ;
+			out.asDoubleBuffer().put(siValues, offset, count) ;
+			out.position(out.position() + count * 8) ;
+		} catch(BufferOverflowException e) {
+			out.position(start) ;
+			throw e ;
+		}
+		return out.position() - start ;
+	}
+
+	/**
+	 * Writes numbers as a batch at the position of out.
+	 *
+	 * @return the number of bytes written.
+	 * @throws BufferOverflowException if out does not have room for the batch, in which case its position is unchanged.
+	 */
+	public int write(List<? extends Number> numbers, ByteBuffer out) {
+		int count = numbers.size() ;
+		double[] siValues = new double[count] ;
+		int[] unitIds = new int[count] ;
+		for(int i=0; i<count; i++) {
+			Number n = numbers.get(i) ;
+			siValues[i] = n.getSIValue() ;
+			unitIds[i] = n.getUnit().getId() ;
+		}
+		return write(siValues, unitIds, 0, count, out) ;
+	}
+
+	/**
+	 * @param in a buffer positioned at the start of a batch.
+	 * @return the number of values in the batch, without moving the position of in.
+	 */
+	public static int count(ByteBuffer in) {
+		return getVarint(in.duplicate()) ;
+	}
+
+	/**
+	 * Reads a batch from the position of in, leaving in positioned after it.
+	 *
+	 * @param in
+	 * @param siValues receives the SI values.
+	 * @param unitIds receives the unit ids, which stay valid at least until the next read.
+	 * @param offset index in both arrays to store the first value at.
+	 * @return the number of values read.
+	 * @throws IllegalArgumentException if the arrays are too small, or the batch is not valid or claims more values or longer
+	 * units than in has bytes for. Lengths are checked before anything is allocated for them.
+	 * @throws java.nio.BufferUnderflowException if in ends before the batch does.
+	 */
+	public int read(ByteBuffer in, double[] siValues, int[] unitIds, int offset) {
+		int count = checkCount(in, getVarint(in)) ;
+		if(offset < 0 || (long)offset + count > siValues.length || (long)offset + count > unitIds.length)
+			throw new IllegalArgumentException("Batch of " + count + " values does not fit arrays at offset " + offset) ;
+		int size = getVarint(in) ;
+		//each dictionary entry takes at least one byte
+		if(size > in.remaining())
+			throw new IllegalArgumentException("Dictionary of " + size + " units is longer than the " + in.remaining() +
+					" bytes remaining") ;
+		if(readDictionary.length < size) {
+			readDictionary = new Unit[Math.max(size, readDictionary.length * 2)] ;
+			readIds = new int[readDictionary.length] ;
+		}
+		for(int i=0; i<size; i++) {
+			int length = getVarint(in) ;
+			if(length > in.remaining())
+				throw new IllegalArgumentException("Unit of " + length + " bytes is longer than the " + in.remaining() +
+						" bytes remaining") ;
+			byte[] text = new byte[length] ;
+			in.get(text) ;
+			readDictionary[i] = unit(text) ;
+			readIds[i] = readDictionary[i].getId() ;
+		}
+		Arrays.fill(readDictionary, size, readDictionary.length, null) ;
+		for(int i=offset; i<offset + count; i++) {
+			int index = getVarint(in) ;
+			if(index >= size)
+				throw new IllegalArgumentException("Unit index " + index + " outside dictionary of " + size) ;
+			unitIds[i] = readIds[index] ;
+		}
+		in.asDoubleBuffer().get(siValues, offset, count) ;
+		in.position(in.position() + count * 8) ;
+		return count ;
+	}
+
+	/**
+	 * Reads a batch from the position of in as Number objects, leaving in positioned after it.
+	 *
+	 * @throws IllegalArgumentException if the batch is not valid or claims more values than in has bytes for.
+	 */
+	public List<Number> read(ByteBuffer in) {
+		int count = checkCount(in, count(in)) ;
+		double[] siValues = new double[count] ;
+		int[] unitIds = new int[count] ;
+		read(in, siValues, unitIds, 0) ;
+		ArrayList<Number> out = new ArrayList<Number>(count) ;
+		for(int i=0; i<count; i++) {
+			out.add(new Number(siValues[i], Unit.forId(unitIds[i]), true)) ;
+		}
+		return out ;
+	}
+
+	/**
+	 * @return count, if in is long enough to hold that many values.
+	 * @throws IllegalArgumentException if it is not, before anything is allocated for them.
+	 */
+	private static int checkCount(ByteBuffer in, int count) {
+		//each value takes 8 bytes for its SI value and at least one for its dictionary index
+		if(count * 9L > in.remaining())
+			throw new IllegalArgumentException("Batch of " + count + " values is longer than the " + in.remaining() +
+					" bytes remaining") ;
+		return count ;
+	}
+
+	/**
+	 * Gives each distinct unit id from offset to offset + count an index in dictionary, in order of first appearance.
+	 */
+	private void buildDictionary(int[] unitIds, int offset, int count) {
+		stamp++ ;
+		if(stamp == 0) {
+			Arrays.fill(stamps, 0) ;
+			stamp = 1 ;
+		}
+		dictionarySize = 0 ;
+		for(int i=offset; i<offset + count; i++) {
+			int id = unitIds[i] ;
+			if(id <= 0)
+				throw new IllegalArgumentException("Invalid unit id " + id) ;
+			int slot = slot(id) ;
+			if(stamps[slot] != stamp) {
+				if(dictionarySize == dictionary.length)
+					dictionary = Arrays.copyOf(dictionary, dictionarySize * 2) ;
+				stamps[slot] = stamp ;
+				slotIds[slot] = id ;
+				slotIndexes[slot] = dictionarySize ;
+				dictionary[dictionarySize++] = id ;
+				if(dictionarySize * 2 > stamps.length)
+					growTable() ;
+			}
+		}
+	}
+
+	/**
+	 * @return the slot of id in the table, or the empty slot where it would go.
+	 */
+	private int slot(int id) {
+		int mask = stamps.length - 1 ;
+		int h = id * 0x9E3779B9 ;
+		int slot = (h ^ (h >>> 16)) & mask ;
+		while(stamps[slot] == stamp && slotIds[slot] != id)
+			slot = (slot + 1) & mask ;
+		return slot ;
+	}
+
+	/**
+	 * Doubles the size of the table, adding back the units of the dictionary.
+	 */
+	private void growTable() {
+		int length = stamps.length * 2 ;
+		slotIds = new int[length] ;
+		slotIndexes = new int[length] ;
+		stamps = new int[length] ;
+		for(int i=0; i<dictionarySize; i++) {
+			int slot = slot(dictionary[i]) ;
+			stamps[slot] = stamp ;
+			slotIds[slot] = dictionary[i] ;
+			slotIndexes[slot] = i ;
+		}
+	}
+
+	/**
+	 * @return the dictionary index of a unit id added by the last call to buildDictionary().
+	 */
+	private int indexOf(int id) {
+		return slotIndexes[slot(id)] ;
+	}
+
+	private static byte[] bytes(int unitId) {
+		Unit unit = Unit.forId(unitId) ;
+		if(unit == null)
+			throw new IllegalArgumentException("Invalid unit id " + unitId) ;
+		try {
+			return unit.encode().getBytes(CHARSET) ;
+		} catch(UnsupportedEncodingException e) {
+			throw new IllegalStateException(e) ;
+		}
+	}
+
+	private Unit unit(byte[] text) {
+		String encoded ;
+		try {
+			encoded = new String(text, CHARSET) ;
+		} catch(UnsupportedEncodingException e) {
+			throw new IllegalStateException(e) ;
+		}
+		Unit unit = decoded.get(encoded) ;
+		if(unit == null) {
+			unit = Unit.valueOf(encoded) ;
+			if(unit == null)
+				throw new IllegalArgumentException("Invalid unit \"" + encoded + "\"") ;
+			decoded.put(encoded, unit) ;
+		}
+		return unit ;
+	}
+
+	private static int varintSize(int value) {
+		int size = 1 ;
+		while((value >>>= 7) != 0)
+			size++ ;
+		return size ;
+	}
+
+	private static void putVarint(ByteBuffer out, int value) {
+		while((value & ~0x7f) != 0) {
+			out.put((byte)((value & 0x7f) | 0x80)) ;
+			value >>>= 7 ;
+		}
+		out.put((byte)value) ;
+	}
+
+	private static int getVarint(ByteBuffer in) {
+		int value = 0 ;
+		for(int shift=0; shift<32; shift+=7) {
+			byte b = in.get() ;
+			value |= (b & 0x7f) << shift ;
+			if(b >= 0) {
+				if(value < 0)
+					break ;
+				return value ;
+			}
+		}
+		throw new IllegalArgumentException("Invalid varint") ;
+	}
+
+}
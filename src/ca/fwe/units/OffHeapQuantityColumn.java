@@ -0,0 +1,355 @@
+package ca.fwe.units;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A column of values sharing one Unit, like QuantityColumn, but stored outside of the Java heap so that series larger than the
+ * heap can be processed without garbage collection pressure or copies. Values are stored as SI doubles either in direct memory
+ * (allocate()) or in a memory-mapped file (map()), split into chunks of up to CHUNK_SIZE values because a single buffer cannot
+ * hold more than 2^31 bytes. Indexes are longs.
+ * <p>
+ * Files hold raw little-endian IEEE doubles in SI units, with no header. Memory is released when the column is garbage collected;
+ * close() writes mapped changes to disk and drops this column's references to its buffers.
+ *
+ * @author Dewey Dunnington
+ *
+ */
+public class OffHeapQuantityColumn implements Closeable {
+
+	private static final int CHUNK_BITS = 27 ;
+
+	/**
+	 * The number of values held by each underlying buffer.
+	 */
+	public static final int CHUNK_SIZE = 1 << CHUNK_BITS ;
+	private static final long CHUNK_MASK = CHUNK_SIZE - 1 ;
+
+	private final Unit unit ;
+	private final long length ;
+	//null once this column has been closed
+	private ByteBuffer[] bytes ;
+	private DoubleBuffer[] chunks ;
+
+	private OffHeapQuantityColumn(Unit unit, long length, ByteBuffer[] bytes) {
+		this.unit = unit ;
+		this.length = length ;
+		this.bytes = bytes ;
+		this.chunks = new DoubleBuffer[bytes.length] ;
+		for(int i=0; i<bytes.length; i++) {
+			chunks[i] = bytes[i].asDoubleBuffer() ;
+		}
+	}
+
+	private OffHeapQuantityColumn(OffHeapQuantityColumn column, Unit unit) {
+		this.unit = unit ;
+		this.length = column.length ;
+		//copies, so that closing one view leaves the others usable
+		this.bytes = column.buffers().clone() ;
+		this.chunks = column.chunks.clone() ;
+	}
+
+	/**
+	 * Allocates a column in direct memory with all values NaN.
+	 *
+	 * @param length the number of values.
+	 * @param unit the unit values are described in.
+	 * @return the new column
+	 */
+	public static OffHeapQuantityColumn allocate(long length, Unit unit) {
+		ByteBuffer[] bytes = new ByteBuffer[chunkCount(length)] ;
+		double[] fill = new double[4096] ;
+		Arrays.fill(fill, Double.NaN) ;
+		for(int i=0; i<bytes.length; i++) {
+			bytes[i] = ByteBuffer.allocateDirect(chunkLength(length, i) * 8).order(ByteOrder.nativeOrder()) ;
+			DoubleBuffer d = bytes[i].asDoubleBuffer() ;
+			while(d.hasRemaining()) {
+				d.put(fill, 0, Math.min(fill.length, d.remaining())) ;
+			}
+		}
+		return new OffHeapQuantityColumn(unit, length, bytes) ;
+	}
+
+	/**
+	 * Maps a file of SI values for reading and writing, extending it with zeros if it holds fewer than length values.
+	 *
+	 * @param file the file to map, created if it does not exist.
+	 * @param length the number of values.
+	 * @param unit the unit values are described in.
+	 * @return a column backed by the file
+	 * @throws IOException if the file cannot be opened or mapped.
+	 */
+	public static OffHeapQuantityColumn map(File file, long length, Unit unit) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw") ;
+		try {
+			if(raf.length() < length * 8)
+				raf.setLength(length * 8) ;
+			return map(raf.getChannel(), FileChannel.MapMode.READ_WRITE, length, unit) ;
+		} finally {
+			raf.close() ;
+		}
+	}
+
+	/**
+	 * Maps an existing file of SI values for reading only. set() on the returned column throws ReadOnlyBufferException.
+	 *
+	 * @param file the file to map.
+	 * @param unit the unit values are described in.
+	 * @return a column backed by the file, holding file.length() / 8 values.
+	 * @throws IOException if the file cannot be opened or mapped.
+	 */
+	public static OffHeapQuantityColumn mapReadOnly(File file, Unit unit) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r") ;
+		try {
+			return map(raf.getChannel(), FileChannel.MapMode.READ_ONLY, raf.length() / 8, unit) ;
+		} finally {
+			raf.close() ;
+		}
+	}
+
+	private static OffHeapQuantityColumn map(FileChannel channel, FileChannel.MapMode mode, long length, Unit unit)
+			throws IOException {
+		ByteBuffer[] bytes = new ByteBuffer[chunkCount(length)] ;
+		for(int i=0; i<bytes.length; i++) {
+			long position = (long)i * CHUNK_SIZE * 8 ;
+			bytes[i] = channel.map(mode, position, (long)chunkLength(length, i) * 8).order(ByteOrder.LITTLE_ENDIAN) ;
+		}
+		return new OffHeapQuantityColumn(unit, length, bytes) ;
+	}
+
+	private static int chunkCount(long length) {
+		if(length < 0)
+			throw new IllegalArgumentException("Negative length " + length) ;
+		return (int)((length + CHUNK_SIZE - 1) >>> CHUNK_BITS) ;
+	}
+
+	private static int chunkLength(long length, int chunk) {
+		return (int)Math.min(CHUNK_SIZE, length - (long)chunk * CHUNK_SIZE) ;
+	}
+
+	/**
+	 * @return the unit describing the values of this column.
+	 */
+	public Unit getUnit() {
+		return unit ;
+	}
+
+	/**
+	 * @return the number of values in this column.
+	 */
+	public long length() {
+		return length ;
+	}
+
+	/**
+	 * @param index
+	 * @return the value at index in SI units.
+	 */
+	public double getSIValue(long index) {
+		checkIndex(index) ;
+		return doubles()[(int)(index >>> CHUNK_BITS)].get((int)(index & CHUNK_MASK)) ;
+	}
+
+	/**
+	 * @param index
+	 * @param siValue the new value at index, in SI units.
+	 */
+	public void setSIValue(long index, double siValue) {
+		checkIndex(index) ;
+		doubles()[(int)(index >>> CHUNK_BITS)].put((int)(index & CHUNK_MASK), siValue) ;
+	}
+
+	/**
+	 * @param index
+	 * @return the value at index in units described by getUnit().
+	 */
+	public double getValue(long index) {
+		return (getSIValue(index) - unit.getOffset()) / unit.getConversionValue() ;
+	}
+
+	/**
+	 * @param index
+	 * @param value the new value at index, in units described by getUnit().
+	 */
+	public void setValue(long index, double value) {
+		setSIValue(index, value * unit.getConversionValue() + unit.getOffset()) ;
+	}
+
+	/**
+	 * @param index
+	 * @return the value at index as a Number in units of getUnit().
+	 */
+	public Number get(long index) {
+		return new Number(getSIValue(index), unit, true) ;
+	}
+
+	/**
+	 * @param index
+	 * @param value
+	 * @throws UnitException if value is not in the same dimensions as this column.
+	 */
+	public void set(long index, Number value) throws UnitException {
+		checkDimensions(value.getUnit()) ;
+		setSIValue(index, value.getSIValue()) ;
+	}
+
+	/**
+	 * Reads values into a heap array, described in units of getUnit().
+	 *
+	 * @param index the first value to read.
+	 * @param dst array to read into.
+	 * @param offset first index of dst to write to.
+	 * @param count the number of values to read.
+	 */
+	public void read(long index, double[] dst, int offset, int count) {
+		checkRange(index, count) ;
+		copy(index, dst, offset, count, true) ;
+		double conversion = unit.getConversionValue() ;
+		double unitOffset = unit.getOffset() ;
+		for(int i=offset; i<offset + count; i++) {
+			dst[i] = (dst[i] - unitOffset) / conversion ;
+		}
+	}
+
+	/**
+	 * Writes values from a heap array, described in units of getUnit().
+	 *
+	 * @param index the first value to write.
+	 * @param src array to read from, not modified.
+	 * @param offset first index of src to read.
+	 * @param count the number of values to write.
+	 */
+	public void write(long index, double[] src, int offset, int count) {
+		checkRange(index, count) ;
+		double[] si = new double[Math.min(count, 4096)] ;
+		double conversion = unit.getConversionValue() ;
+		double unitOffset = unit.getOffset() ;
+		for(int done=0; done<count; done+=si.length) {
+			int n = Math.min(si.length, count - done) ;
+			for(int i=0; i<n; i++) {
+				si[i] = src[offset + done + i] * conversion + unitOffset ;
+			}
+			copy(index + done, si, 0, n, false) ;
+		}
+	}
+
+	/**
+	 * Copies between the chunks and a heap array of SI values.
+	 */
+	private void copy(long index, double[] array, int offset, int count, boolean read) {
+		DoubleBuffer[] chunks = doubles() ;
+		while(count > 0) {
+			int chunk = (int)(index >>> CHUNK_BITS) ;
+			int position = (int)(index & CHUNK_MASK) ;
+			int n = Math.min(count, chunks[chunk].limit() - position) ;
+			DoubleBuffer d = chunks[chunk].duplicate() ;
+			d.position(position) ;
+			if(read) {
+				d.get(array, offset, n) ;
+			} else {
+				d.put(array, offset, n) ;
+			}
+			index += n ;
+			offset += n ;
+			count -= n ;
+		}
+	}
+
+	/**
+	 * @param otherUnit
+	 * @return a view of this column described in otherUnit, sharing the same memory.
+	 * @throws UnitException if otherUnit is not in the same dimensions as this column.
+	 */
+	public OffHeapQuantityColumn in(Unit otherUnit) throws UnitException {
+		checkDimensions(otherUnit) ;
+		return new OffHeapQuantityColumn(this, otherUnit) ;
+	}
+
+	/**
+	 * @param from first index to copy, inclusive.
+	 * @param to last index to copy, exclusive.
+	 * @return a heap QuantityColumn holding a copy of the given range.
+	 */
+	public QuantityColumn toColumn(long from, long to) {
+		if(to - from > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Range of " + (to - from) + " values is too large for a QuantityColumn") ;
+		int count = (int)(to - from) ;
+		checkRange(from, count) ;
+		double[] si = new double[count] ;
+		copy(from, si, 0, count, true) ;
+		return QuantityColumn.wrapSI(si, unit) ;
+	}
+
+	/**
+	 * Writes any changes to a mapped file to disk. Does nothing for columns in direct memory.
+	 */
+	public void force() {
+		ByteBuffer[] bytes = buffers() ;
+		for(int i=0; i<bytes.length; i++) {
+			if(bytes[i] instanceof MappedByteBuffer)
+				((MappedByteBuffer)bytes[i]).force() ;
+		}
+	}
+
+	/**
+	 * Writes any changes to a mapped file to disk and releases this column's references to its memory, which is freed once no
+	 * views of this column remain reachable. Views made with in() are not affected. This column cannot be used afterwards, and
+	 * closing it again does nothing.
+	 */
+	public void close() {
+		if(bytes == null)
+			return ;
+		if(bytes.length > 0 && !bytes[0].isReadOnly())
+			force() ;
+		bytes = null ;
+		chunks = null ;
+	}
+
+	/**
+	 * @throws IllegalStateException if this column has been closed.
+	 */
+	private ByteBuffer[] buffers() {
+		ByteBuffer[] current = bytes ;
+		if(current == null)
+			throw new IllegalStateException("Column has been closed") ;
+		return current ;
+	}
+
+	/**
+	 * @throws IllegalStateException if this column has been closed.
+	 */
+	private DoubleBuffer[] doubles() {
+		DoubleBuffer[] current = chunks ;
+		if(current == null)
+			throw new IllegalStateException("Column has been closed") ;
+		return current ;
+	}
+
+	private void checkDimensions(Unit otherUnit) throws UnitException {
+		if(otherUnit.getDimensionKey() != unit.getDimensionKey())
+			throw new UnitException(unit, otherUnit) ;
+	}
+
+	private void checkIndex(long index) {
+		if(index < 0 || index >= length)
+			throw new IndexOutOfBoundsException("Index " + index + " of column of length " + length) ;
+	}
+
+	private void checkRange(long index, int count) {
+		if(index < 0 || count < 0 || index + count > length)
+			throw new IndexOutOfBoundsException("Cannot access " + count + " values from " + index + " of column of length " + length) ;
+	}
+
+	public String toString() {
+		return "OffHeapQuantityColumn[" + length + " values in " + unit.toString(false) + "]" ;
+	}
+
+}
@@ -0,0 +1,342 @@
+package ca.fwe.units;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Converts and summarizes very large arrays of values by splitting them into chunks of grainSize values and processing the chunks
+ * on an ExecutorService. Arrays no longer than grainSize are processed on the calling thread. Reductions skip NaN values, which
+ * Number uses to mean "no value", and return their result as a Number.
+ * <p>
+ * Files of raw little-endian doubles, such as those written by data loggers, can be converted through memory mapping so that
+ * their values never pass through arrays on the Java heap. Files are mapped MAPPED_REGION_SIZE bytes at a time.
+ * <p>
+ * Methods should not be called from a task running on the same ExecutorService, as they wait for the chunks to finish.
+ *
+ * @author Dewey Dunnington
+ *
+ */
+public class ParallelConversions {
+
+	/**
+	 * Default number of values processed by a single task.
+	 */
+	public static final int DEFAULT_GRAIN_SIZE = 1 << 16 ;
+
+	/**
+	 * Number of bytes of a file mapped at once by the file conversion methods.
+	 */
+	public static final int MAPPED_REGION_SIZE = 1 << 30 ;
+
+	private final ExecutorService executor ;
+	private final int grainSize ;
+
+	/**
+	 * @param executor the ExecutorService chunks are submitted to.
+	 * @param grainSize the number of values processed by a single task. Larger values mean fewer, longer tasks.
+	 */
+	public ParallelConversions(ExecutorService executor, int grainSize) {
+		if(grainSize < 1)
+			throw new IllegalArgumentException("grainSize must be positive: " + grainSize) ;
+		this.executor = executor ;
+		this.grainSize = grainSize ;
+	}
+
+	/**
+	 * Uses a shared pool of daemon threads, one per available processor.
+	 *
+	 * @param grainSize the number of values processed by a single task.
+	 */
+	public ParallelConversions(int grainSize) {
+		this(DefaultPool.EXECUTOR, grainSize) ;
+	}
+
+	/**
+	 * @return an instance using the shared pool and DEFAULT_GRAIN_SIZE.
+	 */
+	public static ParallelConversions getDefault() {
+		return DefaultPool.INSTANCE ;
+	}
+
+	public int getGrainSize() {
+		return grainSize ;
+	}
+
+	/**
+	 * Converts all values in src from one unit to another and writes them to dst. src and dst may be the same array.
+	 *
+	 * @param src values in units of from.
+	 * @param from the unit of the values in src.
+	 * @param dst array to write the converted values to, at least as long as src.
+	 * @param to the unit values are written to dst in.
+	 * @throws UnitException if from and to are of different dimensions.
+	 * @throws InterruptedException if interrupted while waiting for the chunks to finish.
+	 */
+	public void convert(final double[] src, Unit from, final double[] dst, Unit to) throws UnitException, InterruptedException {
+		if(dst.length < src.length)
+			throw new ArrayIndexOutOfBoundsException("Cannot convert " + src.length + " values into array of " + dst.length) ;
+		final Converter converter = from.converterTo(to) ;
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>() ;
+		for(int start=0; start<src.length; start+=grainSize) {
+			final int chunkStart = start ;
+			final int chunkLength = Math.min(grainSize, src.length - start) ;
+			tasks.add(new Callable<Object>() {
+				public Object call() {
+					converter.convert(src, chunkStart, dst, chunkStart, chunkLength) ;
+					return null ;
+				}
+			}) ;
+		}
+		run(tasks) ;
+	}
+
+	/**
+	 * Converts a file of little-endian doubles from one unit to another, writing the result to a second file of the same length.
+	 *
+	 * @param src file of values in units of from, not modified.
+	 * @param from the unit of the values in src.
+	 * @param dst file to write the converted values to, created or replaced.
+	 * @param to the unit values are written to dst in.
+	 * @throws IOException if either file cannot be mapped, or src is not a whole number of doubles.
+	 * @throws UnitException if from and to are of different dimensions.
+	 * @throws InterruptedException if interrupted while waiting for the chunks to finish.
+	 */
+	public void convert(File src, Unit from, File dst, Unit to) throws IOException, UnitException, InterruptedException {
+		Converter converter = from.converterTo(to) ;
+		RandomAccessFile in = new RandomAccessFile(src, "r") ;
+		try {
+			long bytes = checkFileLength(src, in.length()) ;
+			RandomAccessFile out = new RandomAccessFile(dst, "rw") ;
+			try {
+				out.setLength(bytes) ;
+				convert(in.getChannel(), out.getChannel(), bytes, converter) ;
+			} finally {
+				out.close() ;
+			}
+		} finally {
+			in.close() ;
+		}
+	}
+
+	/**
+	 * Converts a file of little-endian doubles from one unit to another, overwriting its values.
+	 *
+	 * @param file file of values in units of from.
+	 * @param from the unit of the values in file.
+	 * @param to the unit values are written back in.
+	 * @throws IOException if the file cannot be mapped, or is not a whole number of doubles.
+	 * @throws UnitException if from and to are of different dimensions.
+	 * @throws InterruptedException if interrupted while waiting for the chunks to finish.
+	 */
+	public void convertInPlace(File file, Unit from, Unit to) throws IOException, UnitException, InterruptedException {
+		Converter converter = from.converterTo(to) ;
+		RandomAccessFile raf = new RandomAccessFile(file, "rw") ;
+		try {
+			long bytes = checkFileLength(file, raf.length()) ;
+			convert(raf.getChannel(), raf.getChannel(), bytes, converter) ;
+		} finally {
+			raf.close() ;
+		}
+	}
+
+	private static long checkFileLength(File file, long bytes) throws IOException {
+		if(bytes % 8 != 0)
+			throw new IOException(file + " is not a whole number of doubles: " + bytes + " bytes") ;
+		return bytes ;
+	}
+
+	/**
+	 * Maps both channels one region at a time and converts each region in chunks of grainSize values. If in and out are the
+	 * same channel the region is mapped once and converted in place.
+	 */
+	private void convert(FileChannel in, FileChannel out, long bytes, final Converter converter)
+			throws IOException, InterruptedException {
+		for(long position=0; position<bytes; position+=MAPPED_REGION_SIZE) {
+			long size = Math.min(MAPPED_REGION_SIZE, bytes - position) ;
+			MappedByteBuffer region = out.map(FileChannel.MapMode.READ_WRITE, position, size) ;
+			final DoubleBuffer dst = region.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer() ;
+			final DoubleBuffer src = in == out ? dst :
+				in.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer() ;
+			List<Callable<Object>> tasks = new ArrayList<Callable<Object>>() ;
+			for(int start=0; start<dst.limit(); start+=grainSize) {
+				final int chunkStart = start ;
+				final int chunkEnd = Math.min(start + grainSize, dst.limit()) ;
+				tasks.add(new Callable<Object>() {
+					public Object call() {
+						DoubleBuffer s = src.duplicate() ;
+						DoubleBuffer d = dst.duplicate() ;
+						s.limit(chunkEnd) ;
+						s.position(chunkStart) ;
+						d.limit(chunkEnd) ;
+						d.position(chunkStart) ;
+						converter.convert(s, d) ;
+						return null ;
+					}
+				}) ;
+			}
+			run(tasks) ;
+			region.force() ;
+		}
+	}
+
+	/**
+	 * @param values values in units of valueUnit
+	 * @param valueUnit
+	 * @param resultUnit the unit of the returned Number
+	 * @return the sum of all values that are not NaN, 0 if there are none. Values in a unit with an offset (such as degrees
+	 * Celcius) are added as differences, as Number.add() adds them, and the sum is described as an absolute value in resultUnit.
+	 * @throws UnitException if valueUnit and resultUnit are of different dimensions.
+	 * @throws InterruptedException if interrupted while waiting for the chunks to finish.
+	 */
+	public Number sum(double[] values, Unit valueUnit, Unit resultUnit) throws UnitException, InterruptedException {
+		Summary s = summarize(values, valueUnit, resultUnit) ;
+		return new Number(s.sum * valueUnit.getConversionValue() + resultUnit.getOffset(), resultUnit, true) ;
+	}
+
+	/**
+	 * @return the mean of all values that are not NaN, NaN if there are none.
+	 * @see #sum(double[], Unit, Unit)
+	 */
+	public Number mean(double[] values, Unit valueUnit, Unit resultUnit) throws UnitException, InterruptedException {
+		Summary s = summarize(values, valueUnit, resultUnit) ;
+		return toNumber(s.sum / s.count, valueUnit, resultUnit) ;
+	}
+
+	/**
+	 * @return the smallest value that is not NaN, NaN if there are none.
+	 * @see #sum(double[], Unit, Unit)
+	 */
+	public Number min(double[] values, Unit valueUnit, Unit resultUnit) throws UnitException, InterruptedException {
+		Summary s = summarize(values, valueUnit, resultUnit) ;
+		return toNumber(s.count > 0 ? s.min : Double.NaN, valueUnit, resultUnit) ;
+	}
+
+	/**
+	 * @return the largest value that is not NaN, NaN if there are none.
+	 * @see #sum(double[], Unit, Unit)
+	 */
+	public Number max(double[] values, Unit valueUnit, Unit resultUnit) throws UnitException, InterruptedException {
+		Summary s = summarize(values, valueUnit, resultUnit) ;
+		return toNumber(s.count > 0 ? s.max : Double.NaN, valueUnit, resultUnit) ;
+	}
+
+	private static Number toNumber(double value, Unit valueUnit, Unit resultUnit) {
+		return new Number(value * valueUnit.getConversionValue() + valueUnit.getOffset(), resultUnit, true) ;
+	}
+
+	private Summary summarize(final double[] values, Unit valueUnit, Unit resultUnit) throws UnitException, InterruptedException {
+		if(valueUnit.getDimensionKey() != resultUnit.getDimensionKey())
+			throw new UnitException(valueUnit, resultUnit) ;
+		List<Callable<Summary>> tasks = new ArrayList<Callable<Summary>>() ;
+		for(int start=0; start<values.length; start+=grainSize) {
+			final int chunkStart = start ;
+			final int chunkEnd = Math.min(start + grainSize, values.length) ;
+			tasks.add(new Callable<Summary>() {
+				public Summary call() {
+					return new Summary(values, chunkStart, chunkEnd) ;
+				}
+			}) ;
+		}
+		Summary total = new Summary() ;
+		for(Summary s: run(tasks)) {
+			total.add(s) ;
+		}
+		return total ;
+	}
+
+	/**
+	 * Runs tasks on the executor, or on the calling thread if there is only one.
+	 *
+	 * @return the results of the tasks, in order.
+	 */
+	private <T> List<T> run(List<Callable<T>> tasks) throws InterruptedException {
+		List<T> results = new ArrayList<T>(tasks.size()) ;
+		if(tasks.size() == 1) {
+			try {
+				results.add(tasks.get(0).call()) ;
+			} catch(RuntimeException e) {
+				throw e ;
+			} catch(Exception e) {
+				throw new RuntimeException(e) ;
+			}
+		} else {
+			for(Future<T> f: executor.invokeAll(tasks)) {
+				try {
+					results.add(f.get()) ;
+				} catch(ExecutionException e) {
+					if(e.getCause() instanceof Error)
+						throw (Error)e.getCause() ;
+					else if(e.getCause() instanceof RuntimeException)
+						throw (RuntimeException)e.getCause() ;
+					else
+						throw new RuntimeException(e.getCause()) ;
+				}
+			}
+		}
+		return results ;
+	}
+
+	/**
+	 * Count, sum, minimum and maximum of the non-NaN values in part of an array.
+	 */
+	private static class Summary {
+		long count ;
+		double sum ;
+		double min = Double.POSITIVE_INFINITY ;
+		double max = Double.NEGATIVE_INFINITY ;
+
+		Summary() {}
+
+		Summary(double[] values, int start, int end) {
+			for(int i=start; i<end; i++) {
+				double v = values[i] ;
+				if(v == v) {
+					count++ ;
+					sum += v ;
+					if(v < min)
+						min = v ;
+					if(v > max)
+						max = v ;
+				}
+			}
+		}
+
+		void add(Summary other) {
+			count += other.count ;
+			sum += other.sum ;
+			min = Math.min(min, other.min) ;
+			max = Math.max(max, other.max) ;
+		}
+	}
+
+	/**
+	 * Holds the shared pool, created the first time it is used.
+	 */
+	private static class DefaultPool {
+		static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+				new ThreadFactory() {
+			private int count = 0 ;
+
+			public synchronized Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "ParallelConversions-" + (++count)) ;
+				t.setDaemon(true) ;
+				return t ;
+			}
+		}) ;
+		static final ParallelConversions INSTANCE = new ParallelConversions(EXECUTOR, DEFAULT_GRAIN_SIZE) ;
+	}
+
+}
@@ -0,0 +1,213 @@
+package ca.fwe.units;
+
+/**
+ * An immutable value with a Unit, for use where Number's mutability gets in the way: a Quantity can be shared between threads
+ * without copying, and its fields are final so that the JIT can treat short-lived Quantity objects as plain values. Like Number
+ * the value is stored in SI units, and arithmetic follows the same rules, but every operation returns a new Quantity. The
+ * arithmetic methods are kept small, and units of results come from the shared unit cache, so once compiled a chain such as
+ * a.multiplyBy(b).add(c) whose intermediate results do not escape the method creates no objects.
+ * <p>
+ * Quantities are created with the static factories of(), ofSI() and from(), and converted back with toNumber().
+ *
+ * @author Dewey Dunnington
+ *
+ */
+public final class Quantity {
+
+	private final double siValue ;
+	private final Unit unit ;
+
+	private Quantity(double siValue, Unit unit) {
+		this.siValue = siValue ;
+		this.unit = unit ;
+	}
+
+	/**
+	 * @param value the value in unit.
+	 * @param unit
+	 * @return a Quantity of value in unit.
+	 */
+	public static Quantity of(double value, Unit unit) {
+		return new Quantity(value * unit.getConversionValue() + unit.getOffset(), unit) ;
+	}
+
+	/**
+	 * @param siValue the value in SI units of the same dimensions as unit.
+	 * @param unit the unit the Quantity is described in.
+	 * @return a Quantity with SI value siValue, described in unit.
+	 */
+	public static Quantity ofSI(double siValue, Unit unit) {
+		return new Quantity(siValue, unit) ;
+	}
+
+	/**
+	 * @param number
+	 * @return a Quantity with the SI value and unit of number.
+	 */
+	public static Quantity from(Number number) {
+		return new Quantity(number.getSIValue(), number.getUnit()) ;
+	}
+
+	/**
+	 * @return a new Number with the SI value and unit of this Quantity.
+	 */
+	public Number toNumber() {
+		return new Number(siValue, unit, true) ;
+	}
+
+	/**
+	 * @return the value of this Quantity, in units described by getUnit().
+	 */
+	public double getValue() {
+		return (siValue - unit.getOffset()) / unit.getConversionValue() ;
+	}
+
+	/**
+	 * @param otherUnit
+	 * @return the value of this Quantity described in units of otherUnit.
+	 * @throws UnitException if units are of different dimensions.
+	 */
+	public double getValue(Unit otherUnit) throws UnitException {
+		checkDimensions(otherUnit) ;
+		return (siValue - otherUnit.getOffset()) / otherUnit.getConversionValue() ;
+	}
+
+	/**
+	 * @return the value of this Quantity described in SI units of the same dimension.
+	 */
+	public double getSIValue() {
+		return siValue ;
+	}
+
+	/**
+	 * @return the unit describing the value of this Quantity.
+	 */
+	public Unit getUnit() {
+		return unit ;
+	}
+
+	/**
+	 * @param otherUnit
+	 * @return this Quantity described in otherUnit.
+	 * @throws UnitException if units are of different dimensions.
+	 */
+	public Quantity in(Unit otherUnit) throws UnitException {
+		checkDimensions(otherUnit) ;
+		return new Quantity(siValue, otherUnit) ;
+	}
+
+	/**
+	 * @return this Quantity described in SI units.
+	 */
+	public Quantity getSI() {
+		return new Quantity(siValue, unit.getSI()) ;
+	}
+
+	/**
+	 * @param other
+	 * @return the product of this Quantity and other.
+	 */
+	public Quantity multiplyBy(Quantity other) {
+		return new Quantity(siValue * other.siValue, unit.multiplyBy(other.unit)) ;
+	}
+
+	/**
+	 * @param factor
+	 * @return this Quantity multiplied by a dimensionless factor, in the same unit.
+	 */
+	public Quantity multiplyBy(double factor) {
+		return new Quantity(siValue * factor, unit) ;
+	}
+
+	/**
+	 * @param other
+	 * @return the quotient of this Quantity and other.
+	 */
+	public Quantity divideBy(Quantity other) {
+		return new Quantity(siValue / other.siValue, unit.divideBy(other.unit)) ;
+	}
+
+	/**
+	 * @param other
+	 * @return the sum of this Quantity and other, expressed in the Unit of this Quantity. As in Number.add(), other is added as a
+	 * difference if its unit has an offset, so 20 deg C plus 10 deg C is 30 deg C.
+	 * @throws UnitException if the units are in different dimensions.
+	 */
+	public Quantity add(Quantity other) throws UnitException {
+		checkDimensions(other.unit) ;
+		return new Quantity(siValue + (other.siValue - other.unit.getOffset()), unit) ;
+	}
+
+	/**
+	 * @param other
+	 * @return the difference between this Quantity and other, expressed in the Unit of this Quantity. If both are in units with
+	 * an offset (such as degrees Celcius), the difference is expressed in this Quantity's Unit.getDeltaUnit().
+	 * @throws UnitException if the units are in different dimensions.
+	 */
+	public Quantity subtract(Quantity other) throws UnitException {
+		checkDimensions(other.unit) ;
+		Unit resultUnit = unit.getOffset() != 0 && other.unit.getOffset() != 0 ? unit.getDeltaUnit() : unit ;
+		return new Quantity(siValue - other.siValue, resultUnit) ;
+	}
+
+	/**
+	 * @return the reciprocal of this Quantity.
+	 */
+	public Quantity invert() {
+		return new Quantity(1.0 / siValue, unit.invert()) ;
+	}
+
+	/**
+	 * @return a string that can be decoded by Quantity.valueOf() or Number.valueOf().
+	 */
+	public String encode() {
+		StringBuilder s = new StringBuilder(DoubleFormatter.MAX_LENGTH + 16) ;
+		char[] buffer = DoubleFormatter.buffer() ;
+		s.append(buffer, 0, DoubleFormatter.formatShortest(getValue(), buffer)) ;
+		s.append(',').append(unit.encode()) ;
+		return s.toString() ;
+	}
+
+	/**
+	 * @param encoded the String generated by encode() or Number.encode().
+	 * @return the Quantity encoded in the String, null if it is not an encoded value.
+	 */
+	public static Quantity valueOf(String encoded) {
+		Number n = Number.valueOf(encoded) ;
+		return n != null ? from(n) : null ;
+	}
+
+	/**
+	 * @return the value in units of getUnit(), as Number.toString() would write it.
+	 */
+	public String toString() {
+		return toNumber().toString() ;
+	}
+
+	/**
+	 * @return true if otherObject is a Quantity with the same SI value in the same dimensions. NaN values are equal to each
+	 * other, and 0.0 to -0.0, so that equals() agrees with hashCode().
+	 */
+	public boolean equals(Object otherObject) {
+		if(otherObject instanceof Quantity) {
+			Quantity other = (Quantity)otherObject ;
+			//adding 0.0 turns -0.0 into 0.0
+			return Double.doubleToLongBits(siValue + 0.0) == Double.doubleToLongBits(other.siValue + 0.0) &&
+					unit.getDimensionKey() == other.unit.getDimensionKey() ;
+		} else {
+			return false ;
+		}
+	}
+
+	public int hashCode() {
+		long bits = Double.doubleToLongBits(siValue + 0.0) ;
+		long key = unit.getDimensionKey() ;
+		return 31 * (int)(bits ^ (bits >>> 32)) + (int)(key ^ (key >>> 32)) ;
+	}
+
+	private void checkDimensions(Unit otherUnit) throws UnitException {
+		if(otherUnit.getDimensionKey() != unit.getDimensionKey())
+			throw new UnitException(unit, otherUnit) ;
+	}
+
+}
@@ -0,0 +1,310 @@
+package ca.fwe.units;
+
+/**
+ * Accumulates the count, sum, mean, variance, minimum and maximum of a stream of values of one dimension without creating an
+ * object for each value. Values may be added in any unit of the accumulator's dimensions; they are converted to SI values, and
+ * the dimensions of a unit are only checked when it differs from the unit of the previous value, so adding a run of values in
+ * the same unit costs a multiply-add each. The sum is kept with Neumaier's compensated summation, so that its error does not grow
+ * with the number of values, and the variance with Welford's method. Results are returned as Numbers in the accumulator's unit
+ * or any other of the same dimensions.
+ * <p>
+ * As in Number.add(), values in units with an offset (such as degrees Celcius) are added as differences, and the sum is described
+ * as an absolute value in the unit asked for, so the sum of 20 and 10 degrees Celcius is 30 degrees Celcius. The mean, minimum and
+ * maximum are absolute values. The variance and standard deviation are differences, so they are described in
+ * Unit.getDeltaUnit() of the unit asked for.
+ * <p>
+ * An accumulator is not safe for use by multiple threads; use ConcurrentQuantityAdder for a sum shared between threads, or give
+ * each thread an accumulator and combine them with add(QuantityAccumulator).
+ *
+ * @author Dewey Dunnington
+ *
+ */
+public class QuantityAccumulator {
+
+	private final Unit unit ;
+	private final long dimensionKey ;
+
+	//the unit of the last value added and its conversion to SI, checked against dimensionKey
+	private Unit lastUnit ;
+	private double lastFactor ;
+	private double lastOffset ;
+
+	private long count = 0 ;
+	private double sum = 0 ;
+	private double compensation = 0 ;
+	//the sum of the offsets of the units values were added in, which sum leaves out
+	private double offsetSum = 0 ;
+	private double mean = 0 ;
+	private double squares = 0 ;
+	private double min = Double.POSITIVE_INFINITY ;
+	private double max = Double.NEGATIVE_INFINITY ;
+
+	/**
+	 * @param unit the unit results are described in by default; values added must be of the same dimensions.
+	 */
+	public QuantityAccumulator(Unit unit) {
+		this.unit = unit ;
+		this.dimensionKey = unit.getDimensionKey() ;
+		this.lastUnit = unit ;
+		this.lastFactor = unit.getConversionValue() ;
+		this.lastOffset = unit.getOffset() ;
+	}
+
+	/**
+	 * @return the unit results are described in by default.
+	 */
+	public Unit getUnit() {
+		return unit ;
+	}
+
+	/**
+	 * @param number
+	 * @throws UnitException if number is not in the dimensions of this accumulator.
+	 */
+	public void add(Number number) throws UnitException {
+		checkDimensions(number.getUnit()) ;
+		double unitOffset = number.getUnit().getOffset() ;
+		accumulate(number.getSIValue() - unitOffset, unitOffset) ;
+	}
+
+	/**
+	 * @param quantity
+	 * @throws UnitException if quantity is not in the dimensions of this accumulator.
+	 */
+	public void add(Quantity quantity) throws UnitException {
+		checkDimensions(quantity.getUnit()) ;
+		double unitOffset = quantity.getUnit().getOffset() ;
+		accumulate(quantity.getSIValue() - unitOffset, unitOffset) ;
+	}
+
+	/**
+	 * @param value
+	 * @param valueUnit the unit value is described in.
+	 * @throws UnitException if valueUnit is not in the dimensions of this accumulator.
+	 */
+	public void add(double value, Unit valueUnit) throws UnitException {
+		if(valueUnit != lastUnit)
+			setLastUnit(valueUnit) ;
+		accumulate(value * lastFactor, lastOffset) ;
+	}
+
+	/**
+	 * Adds count values from values starting at offset, all described in valueUnit. NaN values are skipped.
+	 *
+	 * @throws UnitException if valueUnit is not in the dimensions of this accumulator.
+	 */
+	public void add(double[] values, int offset, int count, Unit valueUnit) throws UnitException {
+		if(valueUnit != lastUnit)
+			setLastUnit(valueUnit) ;
+		double factor = lastFactor ;
+		double unitOffset = lastOffset ;
+		for(int i=offset; i<offset + count; i++) {
+			accumulate(values[i] * factor, unitOffset) ;
+		}
+	}
+
+	/**
+	 * Adds a value in SI units of the dimensions of this accumulator. NaN values are skipped.
+	 *
+	 * @param siValue
+	 */
+	public void addSI(double siValue) {
+		accumulate(siValue, 0) ;
+	}
+
+	/**
+	 * @param difference the value added, in SI units without the offset of its unit.
+	 * @param unitOffset the offset of the unit the value was added in.
+	 */
+	private void accumulate(double difference, double unitOffset) {
+		if(difference != difference)
+			return ;
+		double siValue = difference + unitOffset ;
+		count++ ;
+		addCompensated(difference) ;
+		offsetSum += unitOffset ;
+
+		double delta = siValue - mean ;
+		mean += delta / count ;
+		squares += delta * (siValue - mean) ;
+
+		if(siValue < min)
+			min = siValue ;
+		if(siValue > max)
+			max = siValue ;
+	}
+
+	/**
+	 * Adds the values accumulated by other to this accumulator, as if they had been added to it directly.
+	 *
+	 * @param other
+	 * @throws UnitException if other is not in the dimensions of this accumulator.
+	 */
+	public void add(QuantityAccumulator other) throws UnitException {
+		checkDimensions(other.unit) ;
+		if(other.count == 0)
+			return ;
+		long total = count + other.count ;
+		double delta = other.mean - mean ;
+		squares += other.squares + delta * delta * ((double)count * other.count / total) ;
+		mean += delta * other.count / total ;
+		count = total ;
+		addCompensated(other.sum) ;
+		addCompensated(other.compensation) ;
+		offsetSum += other.offsetSum ;
+		min = Math.min(min, other.min) ;
+		max = Math.max(max, other.max) ;
+	}
+
+	/**
+	 * Removes all values, keeping the unit.
+	 */
+	public void reset() {
+		count = 0 ;
+		sum = 0 ;
+		compensation = 0 ;
+		offsetSum = 0 ;
+		mean = 0 ;
+		squares = 0 ;
+		min = Double.POSITIVE_INFINITY ;
+		max = Double.NEGATIVE_INFINITY ;
+	}
+
+	/**
+	 * @return the number of values added, not counting NaN values.
+	 */
+	public long getCount() {
+		return count ;
+	}
+
+	/**
+	 * @return the compensated sum of the values added, in SI units. Values in units with an offset are added as differences.
+	 */
+	public double getSISum() {
+		return sum + compensation ;
+	}
+
+	/**
+	 * @return the sum of the values added, in getUnit(). Zero if no values have been added.
+	 */
+	public Number getSum() {
+		return new Number(getSISum() + unit.getOffset(), unit, true) ;
+	}
+
+	/**
+	 * @param resultUnit
+	 * @return the sum of the values added, in resultUnit.
+	 * @throws UnitException if resultUnit is not in the dimensions of this accumulator.
+	 */
+	public Number getSum(Unit resultUnit) throws UnitException {
+		checkDimensions(resultUnit) ;
+		return new Number(getSISum() + resultUnit.getOffset(), resultUnit, true) ;
+	}
+
+	/**
+	 * @return the mean of the values added, in getUnit(). NaN if no values have been added.
+	 */
+	public Number getMean() {
+		return new Number(siMean(), unit, true) ;
+	}
+
+	/**
+	 * @param resultUnit
+	 * @return the mean of the values added, in resultUnit. NaN if no values have been added.
+	 * @throws UnitException if resultUnit is not in the dimensions of this accumulator.
+	 */
+	public Number getMean(Unit resultUnit) throws UnitException {
+		checkDimensions(resultUnit) ;
+		return new Number(siMean(), resultUnit, true) ;
+	}
+
+	/**
+	 * @return the sample variance (dividing by count - 1) of the values added, in the square of the delta unit of getUnit(). NaN
+	 * if fewer than two values have been added.
+	 */
+	public Number getVariance() {
+		Unit delta = unit.getDeltaUnit() ;
+		return new Number(siVariance(), delta.multiplyBy(delta), true) ;
+	}
+
+	/**
+	 * @param resultUnit
+	 * @return the sample variance of the values added, in the square of the delta unit of resultUnit.
+	 * @throws UnitException if resultUnit is not in the dimensions of this accumulator.
+	 */
+	public Number getVariance(Unit resultUnit) throws UnitException {
+		checkDimensions(resultUnit) ;
+		Unit delta = resultUnit.getDeltaUnit() ;
+		return new Number(siVariance(), delta.multiplyBy(delta), true) ;
+	}
+
+	/**
+	 * @return the sample standard deviation of the values added, in the delta unit of getUnit(). NaN if fewer than two values
+	 * have been added.
+	 */
+	public Number getStandardDeviation() {
+		return new Number(Math.sqrt(siVariance()), unit.getDeltaUnit(), true) ;
+	}
+
+	/**
+	 * @param resultUnit
+	 * @return the sample standard deviation of the values added, in the delta unit of resultUnit.
+	 * @throws UnitException if resultUnit is not in the dimensions of this accumulator.
+	 */
+	public Number getStandardDeviation(Unit resultUnit) throws UnitException {
+		checkDimensions(resultUnit) ;
+		return new Number(Math.sqrt(siVariance()), resultUnit.getDeltaUnit(), true) ;
+	}
+
+	/**
+	 * @return the smallest value added, in getUnit(). NaN if no values have been added.
+	 */
+	public Number getMin() {
+		return new Number(count > 0 ? min : Double.NaN, unit, true) ;
+	}
+
+	/**
+	 * @return the largest value added, in getUnit(). NaN if no values have been added.
+	 */
+	public Number getMax() {
+		return new Number(count > 0 ? max : Double.NaN, unit, true) ;
+	}
+
+	private double siMean() {
+		if(count == 0)
+			return Double.NaN ;
+		//the compensated sum is more accurate than the running mean, but may overflow where the mean does not
+		double fromSum = (getSISum() + offsetSum) / count ;
+		return Double.isInfinite(fromSum) ? mean : fromSum ;
+	}
+
+	private double siVariance() {
+		return count > 1 ? squares / (count - 1) : Double.NaN ;
+	}
+
+	/**
+	 * Adds value to sum with Neumaier's method, keeping the low-order bits lost from whichever of sum and value is smaller in
+	 * compensation.
+	 */
+	private void addCompensated(double value) {
+		double t = sum + value ;
+		if(Math.abs(sum) >= Math.abs(value))
+			compensation += (sum - t) + value ;
+		else
+			compensation += (value - t) + sum ;
+		sum = t ;
+	}
+
+	private void setLastUnit(Unit valueUnit) throws UnitException {
+		checkDimensions(valueUnit) ;
+		lastUnit = valueUnit ;
+		lastFactor = valueUnit.getConversionValue() ;
+		lastOffset = valueUnit.getOffset() ;
+	}
+
+	private void checkDimensions(Unit otherUnit) throws UnitException {
+		if(otherUnit.getDimensionKey() != dimensionKey)
+			throw new UnitException(unit, otherUnit) ;
+	}
+
+}
@@ -0,0 +1,324 @@
+package ca.fwe.units;
+
+import java.util.Arrays;
+
+/**
+ * A column of values sharing one Unit, stored as SI values in a primitive double array rather than as one Number object per
+ * value. Like Number, values are stored in SI units and converted whenever the user requests them in a different unit, and NaN
+ * means "no value".
+ * <p>
+ * in() and subColumn() return views that share the backing array with this column, so changes made through set() on either are
+ * seen by both. Arithmetic methods always return a new column.
+ *
+ * @author Dewey Dunnington
+ *
+ */
+public class QuantityColumn {
+
+	private final Unit unit ;
+	private final double[] siValues ;
+	private final int start ;
+	private final int length ;
+
+	/**
+	 * Creates a column of length values, all NaN.
+	 *
+	 * @param length
+	 * @param unit the unit values are described in.
+	 */
+	public QuantityColumn(int length, Unit unit) {
+		this(new double[length], 0, length, unit) ;
+		Arrays.fill(siValues, Double.NaN) ;
+	}
+
+	/**
+	 * Creates a column from values described in units of unit. The array is copied, not modified.
+	 *
+	 * @param values
+	 * @param unit
+	 */
+	public QuantityColumn(double[] values, Unit unit) {
+		this(new double[values.length], 0, values.length, unit) ;
+		double conversion = unit.getConversionValue() ;
+		double offset = unit.getOffset() ;
+		for(int i=0; i<length; i++) {
+			siValues[i] = values[i] * conversion + offset ;
+		}
+	}
+
+	private QuantityColumn(double[] siValues, int start, int length, Unit unit) {
+		this.siValues = siValues ;
+		this.start = start ;
+		this.length = length ;
+		this.unit = unit ;
+	}
+
+	/**
+	 * Creates a column backed by an existing array of SI values without copying it.
+	 *
+	 * @param siValues values in SI units of the same dimensions as unit.
+	 * @param unit the unit values are described in.
+	 * @return a column sharing siValues.
+	 */
+	public static QuantityColumn wrapSI(double[] siValues, Unit unit) {
+		return new QuantityColumn(siValues, 0, siValues.length, unit) ;
+	}
+
+	/**
+	 * @return the unit describing the values of this column.
+	 */
+	public Unit getUnit() {
+		return unit ;
+	}
+
+	/**
+	 * @return the number of values in this column.
+	 */
+	public int length() {
+		return length ;
+	}
+
+	/**
+	 * @param index
+	 * @return the value at index in SI units.
+	 */
+	public double getSIValue(int index) {
+		return siValues[checkIndex(index)] ;
+	}
+
+	/**
+	 * @param index
+	 * @return the value at index in units described by getUnit().
+	 */
+	public double getValue(int index) {
+		return (siValues[checkIndex(index)] - unit.getOffset()) / unit.getConversionValue() ;
+	}
+
+	/**
+	 * @param index
+	 * @return the value at index as a Number in units of getUnit().
+	 */
+	public Number get(int index) {
+		return new Number(getSIValue(index), unit, true) ;
+	}
+
+	/**
+	 * @param index
+	 * @param value value in units described by getUnit().
+	 */
+	public void set(int index, double value) {
+		siValues[checkIndex(index)] = value * unit.getConversionValue() + unit.getOffset() ;
+	}
+
+	/**
+	 * @param index
+	 * @param value
+	 * @throws UnitException if value is not in the same dimensions as this column.
+	 */
+	public void set(int index, Number value) throws UnitException {
+		checkDimensions(value.getUnit()) ;
+		siValues[checkIndex(index)] = value.getSIValue() ;
+	}
+
+	/**
+	 * @return a new array with the values of this column in units described by getUnit().
+	 */
+	public double[] toArray() {
+		double[] out = new double[length] ;
+		double conversion = unit.getConversionValue() ;
+		double offset = unit.getOffset() ;
+		for(int i=0; i<length; i++) {
+			out[i] = (siValues[start + i] - offset) / conversion ;
+		}
+		return out ;
+	}
+
+	/**
+	 * @param otherUnit
+	 * @return a new array with the values of this column in units of otherUnit.
+	 * @throws UnitException if otherUnit is not in the same dimensions as this column.
+	 */
+	public double[] toArray(Unit otherUnit) throws UnitException {
+		return in(otherUnit).toArray() ;
+	}
+
+	/**
+	 * @return a new array with the values of this column in SI units.
+	 */
+	public double[] toSIArray() {
+		double[] out = new double[length] ;
+		System.arraycopy(siValues, start, out, 0, length) ;
+		return out ;
+	}
+
+	/**
+	 * @param otherUnit
+	 * @return a view of this column described in otherUnit, sharing the same values.
+	 * @throws UnitException if otherUnit is not in the same dimensions as this column.
+	 */
+	public QuantityColumn in(Unit otherUnit) throws UnitException {
+		checkDimensions(otherUnit) ;
+		return new QuantityColumn(siValues, start, length, otherUnit) ;
+	}
+
+	/**
+	 * @param from first index of the view, inclusive.
+	 * @param to last index of the view, exclusive.
+	 * @return a view of part of this column, sharing the same values. Useful for splitting work between threads.
+	 */
+	public QuantityColumn subColumn(int from, int to) {
+		if(from < 0 || to > length || from > to)
+			throw new IndexOutOfBoundsException("Cannot take [" + from + ", " + to + ") of column of length " + length) ;
+		return new QuantityColumn(siValues, start + from, to - from, unit) ;
+	}
+
+	/**
+	 * Add another column to this column, value by value.
+	 *
+	 * @param other a column of the same length and dimensions.
+	 * @return the sums, described in the Unit of this column. Values of other are added as differences (see Number.add()).
+	 * @throws UnitException if the columns are in different dimensions.
+	 */
+	public QuantityColumn add(QuantityColumn other) throws UnitException {
+		checkDimensions(other.getUnit()) ;
+		checkLength(other) ;
+		double[] out = new double[length] ;
+		double otherOffset = other.getUnit().getOffset() ;
+		for(int i=0; i<length; i++) {
+			out[i] = siValues[start + i] + (other.siValues[other.start + i] - otherOffset) ;
+		}
+		return wrapSI(out, unit) ;
+	}
+
+	/**
+	 * Subtract another column from this column, value by value.
+	 *
+	 * @param other a column of the same length and dimensions.
+	 * @return the differences, described in the Unit of this column (see Number.subtract()).
+	 * @throws UnitException if the columns are in different dimensions.
+	 */
+	public QuantityColumn subtract(QuantityColumn other) throws UnitException {
+		checkDimensions(other.getUnit()) ;
+		checkLength(other) ;
+		double[] out = new double[length] ;
+		for(int i=0; i<length; i++) {
+			out[i] = siValues[start + i] - other.siValues[other.start + i] ;
+		}
+		return wrapSI(out, differenceUnit(other.getUnit())) ;
+	}
+
+	/**
+	 * Multiply this column by another column, value by value.
+	 *
+	 * @param other a column of the same length.
+	 * @return the products.
+	 */
+	public QuantityColumn multiplyBy(QuantityColumn other) {
+		checkLength(other) ;
+		double[] out = new double[length] ;
+		for(int i=0; i<length; i++) {
+			out[i] = siValues[start + i] * other.siValues[other.start + i] ;
+		}
+		return wrapSI(out, unit.multiplyBy(other.getUnit())) ;
+	}
+
+	/**
+	 * Divide this column by another column, value by value.
+	 *
+	 * @param other a column of the same length.
+	 * @return the quotients.
+	 */
+	public QuantityColumn divideBy(QuantityColumn other) {
+		checkLength(other) ;
+		double[] out = new double[length] ;
+		for(int i=0; i<length; i++) {
+			out[i] = siValues[start + i] / other.siValues[other.start + i] ;
+		}
+		return wrapSI(out, unit.divideBy(other.getUnit())) ;
+	}
+
+	/**
+	 * @param number the number to add to each value, as a difference (see Number.add()).
+	 * @return the sums, described in the Unit of this column.
+	 * @throws UnitException if number is in different dimensions than this column.
+	 */
+	public QuantityColumn add(Number number) throws UnitException {
+		checkDimensions(number.getUnit()) ;
+		double[] out = new double[length] ;
+		double si = number.getSIValue() - number.getUnit().getOffset() ;
+		for(int i=0; i<length; i++) {
+			out[i] = siValues[start + i] + si ;
+		}
+		return wrapSI(out, unit) ;
+	}
+
+	/**
+	 * @param number the number to subtract from each value.
+	 * @return the differences, described in the Unit of this column (see Number.subtract()).
+	 * @throws UnitException if number is in different dimensions than this column.
+	 */
+	public QuantityColumn subtract(Number number) throws UnitException {
+		checkDimensions(number.getUnit()) ;
+		double[] out = new double[length] ;
+		double si = number.getSIValue() ;
+		for(int i=0; i<length; i++) {
+			out[i] = siValues[start + i] - si ;
+		}
+		return wrapSI(out, differenceUnit(number.getUnit())) ;
+	}
+
+	/**
+	 * @param number the number to multiply each value by.
+	 * @return the products.
+	 */
+	public QuantityColumn multiplyBy(Number number) {
+		double[] out = new double[length] ;
+		double si = number.getSIValue() ;
+		for(int i=0; i<length; i++) {
+			out[i] = siValues[start + i] * si ;
+		}
+		return wrapSI(out, unit.multiplyBy(number.getUnit())) ;
+	}
+
+	/**
+	 * @param number the number to divide each value by.
+	 * @return the quotients.
+	 */
+	public QuantityColumn divideBy(Number number) {
+		double[] out = new double[length] ;
+		double si = number.getSIValue() ;
+		for(int i=0; i<length; i++) {
+			out[i] = siValues[start + i] / si ;
+		}
+		return wrapSI(out, unit.divideBy(number.getUnit())) ;
+	}
+
+	private Unit differenceUnit(Unit otherUnit) {
+		if(unit.getOffset() != 0 && otherUnit.getOffset() != 0) {
+			return unit.getDeltaUnit() ;
+		} else {
+			return unit ;
+		}
+	}
+
+	private void checkDimensions(Unit otherUnit) throws UnitException {
+		if(otherUnit.getDimensionKey() != unit.getDimensionKey())
+			throw new UnitException(unit, otherUnit) ;
+	}
+
+	private void checkLength(QuantityColumn other) {
+		if(other.length != length)
+			throw new IllegalArgumentException("Column lengths differ: " + length + " and " + other.length) ;
+	}
+
+	private int checkIndex(int index) {
+		if(index < 0 || index >= length)
+			throw new IndexOutOfBoundsException("Index " + index + " of column of length " + length) ;
+		return start + index ;
+	}
+
+	public String toString() {
+		return "QuantityColumn[" + length + " values in " + unit.toString(false) + "]" ;
+	}
+
+}
@@ -0,0 +1,290 @@
+package ca.fwe.units;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Finds quantity literals such as "12.5 km/h" or "3.2 GiB" in text and passes each one to a Handler as its SI value and the id
+ * of its unit (see Unit.getId() and Unit.forId()). A literal is a decimal number that does not start in the middle of a word,
+ * followed by optional spaces or tabs and a unit expression understood by Unit.parse(). Numbers not followed by a known unit are
+ * skipped.
+ * <p>
+ * Unit text is looked up in a table owned by the scanner, keyed by the characters themselves, so once each distinct unit string has
+ * been seen scanning creates no objects: no String, Double or Number is made for a literal. The table holds at most
+ * MAX_UNIT_STRINGS strings, including strings that are not units; strings seen after it is full are resolved with Unit.parse()
+ * each time. Because of this table a scanner must only be used by one thread at a time.
+ * <p>
+ * The table holds the units it has resolved, and the scanner the last unit resolved outside it, so an id passed to a handler
+ * can be given to Unit.forId() for as long as the scanner is reachable, or until the next quantity for units not in the table.
+ *
+ * @author Dewey Dunnington
+ *
+ */
+public class QuantityScanner {
+
+	/**
+	 * Receives the quantities found by a scanner.
+	 */
+	public interface Handler {
+
+		/**
+		 * @param siValue the value of the literal in SI units.
+		 * @param unitId the id of the literal's unit, for Unit.forId().
+		 * @param start index of the first character of the literal.
+		 * @param end index after the last character of the literal.
+		 */
+		void quantity(double siValue, int unitId, int start, int end) ;
+
+	}
+
+	/**
+	 * The largest number of distinct unit strings remembered by a scanner.
+	 */
+	public static final int MAX_UNIT_STRINGS = 4096 ;
+
+	private static final int TABLE_SIZE = MAX_UNIT_STRINGS * 2 ;
+
+	private final String[] keys = new String[TABLE_SIZE] ;
+	private final Unit[] units = new Unit[TABLE_SIZE] ;
+	private final int[] ids = new int[TABLE_SIZE] ;
+	private final double[] factors = new double[TABLE_SIZE] ;
+	private final double[] offsets = new double[TABLE_SIZE] ;
+	private int size = 0 ;
+	//keeps the id of the last unit resolved outside the table valid
+	private Unit last ;
+
+	private final ByteSequence bytes = new ByteSequence() ;
+
+	/**
+	 * Scans all of text.
+	 *
+	 * @return the number of quantities passed to handler.
+	 */
+	public int scan(CharSequence text, Handler handler) {
+		return scan(text, 0, text.length(), handler) ;
+	}
+
+	/**
+	 * Scans the remaining bytes of buffer, which should hold ASCII or ISO-8859-1 text, without changing its position. Indexes
+	 * passed to handler are relative to the buffer's position.
+	 *
+	 * @return the number of quantities passed to handler.
+	 */
+	public int scan(ByteBuffer buffer, Handler handler) {
+		bytes.buffer = buffer ;
+		bytes.base = buffer.position() ;
+		bytes.length = buffer.remaining() ;
+		try {
+			return scan(bytes, 0, bytes.length, handler) ;
+		} finally {
+			bytes.buffer = null ;
+		}
+	}
+
+	/**
+	 * Scans text from index from, inclusive, to index to, exclusive.
+	 *
+	 * @return the number of quantities passed to handler.
+	 */
+	public int scan(CharSequence text, int from, int to, Handler handler) {
+		int found = 0 ;
+		int i = from ;
+		while(i < to) {
+			char c = text.charAt(i) ;
+			boolean sign = (c == '-' || c == '+') && i + 1 < to && isDigit(text.charAt(i + 1)) ;
+			if(!(isDigit(c) || sign) || (i > from && isWordChar(text.charAt(i - 1)))) {
+				i++ ;
+				continue ;
+			}
+
+			int start = i ;
+			int numberEnd = numberEnd(text, sign ? i + 1 : i, to) ;
+			int unitStart = numberEnd ;
+			while(unitStart < to && (text.charAt(unitStart) == ' ' || text.charAt(unitStart) == '\t'))
+				unitStart++ ;
+			int unitEnd = unitEnd(text, unitStart, to) ;
+			i = Math.max(unitEnd, numberEnd) ;
+			if(unitEnd == unitStart)
+				continue ;
+
+			int slot = lookup(text, unitStart, unitEnd) ;
+			if(slot >= 0 && ids[slot] != 0) {
+				double value = DecimalParser.parse(text, start, numberEnd) ;
+				handler.quantity(value * factors[slot] + offsets[slot], ids[slot], start, unitEnd) ;
+				found++ ;
+			} else if(slot < 0) {
+				Unit unit = resolve(text, unitStart, unitEnd) ;
+				if(unit != null) {
+					double value = DecimalParser.parse(text, start, numberEnd) ;
+					handler.quantity(value * unit.getConversionValue() + unit.getOffset(), unit.getId(), start, unitEnd) ;
+					found++ ;
+				}
+			}
+		}
+		return found ;
+	}
+
+	/**
+	 * @return the index after the digits, decimal point and exponent of the number whose digits start at i.
+	 */
+	private static int numberEnd(CharSequence text, int i, int to) {
+		while(i < to && isDigit(text.charAt(i)))
+			i++ ;
+		if(i + 1 < to && text.charAt(i) == '.' && isDigit(text.charAt(i + 1))) {
+			i++ ;
+			while(i < to && isDigit(text.charAt(i)))
+				i++ ;
+		}
+		if(i + 1 < to && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+			int j = i + 1 ;
+			if(j + 1 < to && (text.charAt(j) == '-' || text.charAt(j) == '+'))
+				j++ ;
+			if(j < to && isDigit(text.charAt(j))) {
+				i = j ;
+				while(i < to && isDigit(text.charAt(i)))
+					i++ ;
+			}
+		}
+		return i ;
+	}
+
+	/**
+	 * @return the index after the unit expression starting at i, i if there is none. Operators and unmatched ')' at the end of
+	 * the expression, such as the full stop at the end of a sentence, are not included.
+	 */
+	private static int unitEnd(CharSequence text, int i, int to) {
+		if(i == to || !isUnitStart(text.charAt(i)))
+			return i ;
+		int end = i ;
+		while(end < to && (isUnitChar(text.charAt(end)) || (text.charAt(end) == '-' && text.charAt(end - 1) == '^')))
+			end++ ;
+		int open = 0 ;
+		for(int j=i; j<end; j++) {
+			if(text.charAt(j) == '(')
+				open++ ;
+			else if(text.charAt(j) == ')')
+				open-- ;
+		}
+		while(end > i) {
+			char last = text.charAt(end - 1) ;
+			if(last == ')' && open < 0)
+				open++ ;
+			else if(isUnitStart(last) || isDigit(last) || last == ')')
+				break ;
+			end-- ;
+		}
+		return end ;
+	}
+
+	/**
+	 * @return the slot holding the unit string from start to end, or -1 if it is not in the table.
+	 */
+	private int lookup(CharSequence text, int start, int end) {
+		int slot = hash(text, start, end) & (TABLE_SIZE - 1) ;
+		String key ;
+		while((key = keys[slot]) != null) {
+			if(matches(key, text, start, end))
+				return slot ;
+			slot = (slot + 1) & (TABLE_SIZE - 1) ;
+		}
+		return -1 ;
+	}
+
+	/**
+	 * Parses a unit string not yet in the table, adding it to the table if there is room.
+	 *
+	 * @return the unit, null if the string is not a unit or Unit.parse() rejects it, for instance for raising a dimension to a
+	 * power beyond +/-Unit.MAX_EXPONENT.
+	 */
+	private Unit resolve(CharSequence text, int start, int end) {
+		String key = text.subSequence(start, end).toString() ;
+		Unit unit ;
+		try {
+			unit = Unit.parse(key) ;
+		} catch(IllegalArgumentException e) {
+			unit = null ;
+		}
+		if(unit != null && Double.isNaN(unit.getConversionValue()))
+			unit = null ;
+		if(size < MAX_UNIT_STRINGS) {
+			int slot = hash(text, start, end) & (TABLE_SIZE - 1) ;
+			while(keys[slot] != null)
+				slot = (slot + 1) & (TABLE_SIZE - 1) ;
+			keys[slot] = key ;
+			if(unit != null) {
+				units[slot] = unit ;
+				ids[slot] = unit.getId() ;
+				factors[slot] = unit.getConversionValue() ;
+				offsets[slot] = unit.getOffset() ;
+			}
+			size++ ;
+		} else {
+			last = unit ;
+		}
+		return unit ;
+	}
+
+	private static boolean matches(String key, CharSequence text, int start, int end) {
+		if(key.length() != end - start)
+			return false ;
+		for(int i=0; i<key.length(); i++) {
+			if(key.charAt(i) != text.charAt(start + i))
+				return false ;
+		}
+		return true ;
+	}
+
+	private static int hash(CharSequence text, int start, int end) {
+		int h = 0 ;
+		for(int i=start; i<end; i++) {
+			h = 31 * h + text.charAt(i) ;
+		}
+		return h ^ (h >>> 16) ;
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9' ;
+	}
+
+	private static boolean isWordChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '.' ;
+	}
+
+	private static boolean isUnitStart(char c) {
+		return Character.isLetter(c) || c == '%' || c == '$' || c == '\u00b0' || c == '(' ;
+	}
+
+	private static boolean isUnitChar(char c) {
+		return isUnitStart(c) || isDigit(c) || c == '_' || c == '/' || c == '^' || c == '*' || c == '.' || c == ')' ||
+				c == '\u00b7' ;
+	}
+
+	/**
+	 * Presents the bytes of a ByteBuffer as characters, one byte per character.
+	 */
+	private static class ByteSequence implements CharSequence {
+		ByteBuffer buffer ;
+		int base ;
+		int length ;
+
+		public int length() {
+			return length ;
+		}
+
+		public char charAt(int index) {
+			return (char)(buffer.get(base + index) & 0xff) ;
+		}
+
+		public CharSequence subSequence(int start, int end) {
+			StringBuilder s = new StringBuilder(end - start) ;
+			for(int i=start; i<end; i++) {
+				s.append(charAt(i)) ;
+			}
+			return s ;
+		}
+
+		public String toString() {
+			return subSequence(0, length).toString() ;
+		}
+	}
+
+}
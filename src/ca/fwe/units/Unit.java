@@ -1,6 +1,7 @@
 package ca.fwe.units;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -11,6 +12,21 @@ import java.util.Map.Entry;
  * ones where it is not, such as degrees Celcius. A Unit object is made up of a numerator and denominator of BaseUnit objects. Names
  * and abbreviations are included as a convenience, and can be obtained from the Units library using the Units.getUnitAlias() method.
  * Intended to be immutable and use independent backing ArrayLists.
+ * <p>
+ * Dimensions and conversion value are stored as an integer exponent per BaseUnit.Dimension and a single scale factor, both
+ * computed once at construction, so that conversion, comparison and multiplyBy()/divideBy()/invert() do not loop over BaseUnits.
+ * The exponents are packed into a single long (see getDimensionKey()), so each dimension can be raised to a power between
+ * -7 and 7 (MAX_EXPONENT). Constructors and operations that would go beyond that throw ArithmeticException, and valueOf()
+ * returns null. The numerator and denominator are only used for display and encoding, and are built lazily for units resulting
+ * from multiplyBy(), divideBy() and invert().
+ * <p>
+ * multiplyBy(), divideBy(), invert() and getSI() return shared, canonical instances (see intern()) and remember their results,
+ * and these instances cannot be named: setShort() throws UnsupportedOperationException. Use Unit(String, String, Unit) for
+ * a named copy.
+ * <p>
+ * A unit made of a single BaseUnit that has an offset (such as degrees Celcius) describes absolute values, and getOffset()
+ * returns the offset in SI units. Any other unit, including the results of multiplyBy(), divideBy() and invert(), describes
+ * differences and has an offset of 0, so that J/deg_C means the same as J/K.
  * 
  * @author Dewey Dunnington
  *
@@ -28,16 +44,69 @@ public class Unit extends UnitAlias {
 	private static final String UNIT_SEPARATOR = "&" ;
 	private static final String FRACTION_SEPARATOR = "/" ;
 
-	private ArrayList<BaseUnit> numerator ;
-	private ArrayList<BaseUnit> denominator ;
+	private static final int OP_MULTIPLY = UnitCache.OP_MULTIPLY ;
+	private static final int OP_DIVIDE = UnitCache.OP_DIVIDE ;
+	private static final int OP_INVERT = UnitCache.OP_INVERT ;
+	private static final int OP_SI = UnitCache.OP_SI ;
+
+	/**
+	 * The number of pending operations a lazily built unit may chain before its BaseUnits are built eagerly. Keeps building
+	 * the numerator and denominator from recursing deeply when units are multiplied in a loop.
+	 */
+	private static final int MAX_PENDING_DEPTH = 16 ;
+
+	/**
+	 * The largest power a single dimension can be raised to in a Unit. Exponents are stored as signed 4-bit values; -8 is left out
+	 * so that every unit can be inverted and so that UNKNOWN_DIMENSION_KEY can never be a valid key.
+	 */
+	public static final int MAX_EXPONENT = 7 ;
+
+	/**
+	 * A value never returned by getDimensionKey(), used where the dimensions of something are not known.
+	 */
+	public static final long UNKNOWN_DIMENSION_KEY = Long.MIN_VALUE ;
+
+	private static final int EXPONENT_BITS = 4 ;
+	private static final long EXPONENT_MASK = 0xF ;
+
+	private final long dimensionKey ;
+	private final double conversionValue ;
+	private final double offset ;
+	private final double unitType ;
+	private final int depth ;
+
+	/**
+	 * Either a Terms object with the numerator and denominator, or a Pending object describing how to build them.
+	 */
+	private volatile Object terms ;
+
+	/**
+	 * The id of this unit if it is a canonical instance held by UnitCache, otherwise 0.
+	 */
+	private final int id ;
+
+	/**
+	 * True for the canonical instances held by UnitCache, which are shared by all callers and so may not be named.
+	 */
+	private final boolean shared ;
+
+	/**
+	 * The canonical instance equal to this unit, null until it has been looked up. Holding it keeps it, and so getId(), valid for
+	 * as long as this unit is reachable.
+	 */
+	private Unit canonical ;
+
+	/**
+	 * The result of encode(), null until it has been built.
+	 */
+	private String encoded ;
 
 
 	/**
 	 * Creates a new, empty unit, serving as a ratio and conversion value of 1.
 	 */
 	public Unit() {
-		numerator = new ArrayList<BaseUnit>() ;
-		denominator = new ArrayList<BaseUnit>() ;
+		this(new ArrayList<BaseUnit>(), new ArrayList<BaseUnit>(), false) ;
 	}
 
 	/**
@@ -48,12 +117,10 @@ public class Unit extends UnitAlias {
 	 * @param shortName
 	 * @param baseUnit original Unit
 	 * @param conversion conversion value for this unit (kilo = 1000, etc.)
+	 * @throws ArithmeticException if a dimension would be raised to a power beyond +/-MAX_EXPONENT.
 	 */
 	public Unit(String name, String shortName, Unit baseUnit, double conversion) {
-		this() ;
-		numerator.addAll(baseUnit.getNumerator()) ;
-		denominator.addAll(baseUnit.getDenominator()) ;
-		numerator.add(new BaseUnit(conversion)) ;
+		this(append(baseUnit.getNumerator(), new BaseUnit(conversion)), baseUnit.getDenominator(), false) ;
 		this.setName(name) ;
 		this.setShort(shortName) ;
 	}
@@ -64,8 +131,7 @@ public class Unit extends UnitAlias {
 	 * @param unit
 	 */
 	public Unit(BaseUnit unit) {
-		this() ;
-		numerator.add(unit) ;
+		this(append(new ArrayList<BaseUnit>(), unit), new ArrayList<BaseUnit>(), false) ;
 		this.setName(unit.getName()) ;
 	}
 
@@ -74,12 +140,10 @@ public class Unit extends UnitAlias {
 	 * 
 	 * @param numeratorUnits
 	 * @param denominatorUnits
+	 * @throws ArithmeticException if a dimension would be raised to a power beyond +/-MAX_EXPONENT.
 	 */
 	public Unit(ArrayList<BaseUnit> numeratorUnits, ArrayList<BaseUnit> denominatorUnits) {
-		this() ;
-		numerator.addAll(numeratorUnits) ;
-		denominator.addAll(denominatorUnits) ;
-		this.simplify() ;
+		this(new ArrayList<BaseUnit>(numeratorUnits), new ArrayList<BaseUnit>(denominatorUnits), true) ;
 	}
 
 
@@ -89,16 +153,10 @@ public class Unit extends UnitAlias {
 	 * 
 	 * @param numeratorUnits
 	 * @param denomUnits
+	 * @throws ArithmeticException if a dimension would be raised to a power beyond +/-MAX_EXPONENT.
 	 */
 	public Unit(BaseUnit[] numeratorUnits, BaseUnit[] denomUnits) {
-		this() ;
-		for(int i=0; i<numeratorUnits.length; i++) {
-			numerator.add(numeratorUnits[i]) ;
-		}
-		for(int i=0; i<denomUnits.length; i++) {
-			denominator.add(denomUnits[i]) ;
-		}
-		this.simplify() ;
+		this(new ArrayList<BaseUnit>(Arrays.asList(numeratorUnits)), new ArrayList<BaseUnit>(Arrays.asList(denomUnits)), true) ;
 	}
 
 
@@ -106,6 +164,7 @@ public class Unit extends UnitAlias {
 	 * Creates a new unit with a list of numerator units
 	 * 
 	 * @param numeratorUnits
+	 * @throws ArithmeticException if a dimension would be raised to a power beyond +/-MAX_EXPONENT.
 	 */
 	public Unit(BaseUnit[] numeratorUnits) {
 		this(numeratorUnits, new BaseUnit[] {}) ;
@@ -117,12 +176,22 @@ public class Unit extends UnitAlias {
 		this.setShort(shortName) ;
 	}
 
+	/**
+	 * Creates a named unit based on two arrays of BaseUnit objects.
+	 * 
+	 * @throws ArithmeticException if a dimension would be raised to a power beyond +/-MAX_EXPONENT.
+	 */
 	public Unit(String name, String shortName, BaseUnit[] numeratorUnits, BaseUnit[] denomUnits) {
 		this(numeratorUnits, denomUnits) ;
 		this.setName(name) ;
 		this.setShort(shortName) ;
 	}
 
+	/**
+	 * Creates a named unit with a list of numerator units.
+	 * 
+	 * @throws ArithmeticException if a dimension would be raised to a power beyond +/-MAX_EXPONENT.
+	 */
 	public Unit(String name, String shortName, BaseUnit[] numeratorUnits) {
 		this(numeratorUnits) ;
 		this.setName(name) ;
@@ -143,74 +212,323 @@ public class Unit extends UnitAlias {
 		this.setShort(shortName) ;
 	}
 
+	/**
+	 * Creates a unit from lists of BaseUnits that are owned by the new object, computing the exponents and conversion value.
+	 * 
+	 * @param numeratorUnits
+	 * @param denominatorUnits
+	 * @param simplify true if ratios should be combined and identical units cancelled before the unit is stored.
+	 */
+	private Unit(ArrayList<BaseUnit> numeratorUnits, ArrayList<BaseUnit> denominatorUnits, boolean simplify) {
+		if(simplify) {
+			simplify(numeratorUnits, denominatorUnits) ;
+		}
+		int[] exp = new int[BaseUnit.Dimension.COUNT] ;
+		double value = 1 ;
+		for(int i=0; i<numeratorUnits.size(); i++) {
+			BaseUnit b = numeratorUnits.get(i) ;
+			value *= b.getBaseUnitRatio() ;
+			if(b.getDimensionIndex() != -1)
+				exp[b.getDimensionIndex()]++ ;
+		}
+		for(int i=0; i<denominatorUnits.size(); i++) {
+			BaseUnit b = denominatorUnits.get(i) ;
+			value /= b.getBaseUnitRatio() ;
+			if(b.getDimensionIndex() != -1)
+				exp[b.getDimensionIndex()]-- ;
+		}
+		this.dimensionKey = packDimensions(exp) ;
+		this.conversionValue = value ;
+		if(numeratorUnits.size() == 1 && denominatorUnits.size() == 0) {
+			this.offset = numeratorUnits.get(0).getBaseUnitOffset() * numeratorUnits.get(0).getBaseUnitRatio() ;
+		} else {
+			this.offset = 0 ;
+		}
+		this.unitType = computeUnitType(dimensionKey) ;
+		this.depth = 0 ;
+		this.terms = new Terms(numeratorUnits, denominatorUnits) ;
+		this.id = 0 ;
+		this.shared = false ;
+	}
+
+	/**
+	 * Creates the result of an operation on one or two units. Only the exponents and conversion value are computed here, the
+	 * numerator and denominator are built when first requested.
+	 * 
+	 * @param op one of OP_MULTIPLY, OP_DIVIDE, OP_INVERT
+	 * @param first
+	 * @param second null for OP_INVERT
+	 */
+	private Unit(int op, Unit first, Unit second) {
+		int[] exp = new int[BaseUnit.Dimension.COUNT] ;
+		int operandDepth ;
+		switch(op) {
+		case OP_MULTIPLY:
+			for(int i=0; i<exp.length; i++)
+				exp[i] = getExponentAt(first.dimensionKey, i) + getExponentAt(second.dimensionKey, i) ;
+			conversionValue = first.conversionValue * second.conversionValue ;
+			operandDepth = Math.max(first.depth, second.depth) ;
+			break ;
+		case OP_DIVIDE:
+			for(int i=0; i<exp.length; i++)
+				exp[i] = getExponentAt(first.dimensionKey, i) - getExponentAt(second.dimensionKey, i) ;
+			conversionValue = first.conversionValue / second.conversionValue ;
+			operandDepth = Math.max(first.depth, second.depth) ;
+			break ;
+		default:
+			for(int i=0; i<exp.length; i++)
+				exp[i] = -getExponentAt(first.dimensionKey, i) ;
+			conversionValue = 1.0 / first.conversionValue ;
+			operandDepth = first.depth ;
+		}
+		this.dimensionKey = packDimensions(exp) ;
+		this.offset = 0 ;
+		this.unitType = computeUnitType(dimensionKey) ;
+		Pending pending = new Pending(op, first, second) ;
+		if(operandDepth < MAX_PENDING_DEPTH) {
+			this.depth = operandDepth + 1 ;
+			this.terms = pending ;
+		} else {
+			this.depth = 0 ;
+			this.terms = buildTerms(pending) ;
+		}
+		this.id = 0 ;
+		this.shared = false ;
+	}
+
+	/**
+	 * Creates a copy of a unit without name or abbreviation.
+	 * 
+	 * @param unit the unit to copy
+	 * @param offset the offset of the new unit
+	 * @param id the canonical id of the new unit, 0 if not known.
+	 */
+	private Unit(Unit unit, double offset, int id) {
+		this.dimensionKey = unit.dimensionKey ;
+		this.conversionValue = unit.conversionValue ;
+		this.offset = offset ;
+		this.unitType = unit.unitType ;
+		this.depth = unit.depth ;
+		this.terms = unit.terms ;
+		this.id = id ;
+		this.shared = id != 0 ;
+		if(shared)
+			this.canonical = this ;
+	}
+
+	/**
+	 * Creates the canonical copy of this unit, which may not be named. Only used by UnitCache.
+	 */
+	Unit canonicalCopy(int id) {
+		return new Unit(this, offset, id) ;
+	}
+
+	/**
+	 * Performs an operation without consulting UnitCache.
+	 * 
+	 * @param op one of the UnitCache OP_ constants
+	 * @param first
+	 * @param second null for OP_INVERT and OP_SI
+	 * @return the resulting unit.
+	 */
+	static Unit compute(int op, Unit first, Unit second) {
+		if(op == OP_SI) {
+			return first.computeSI() ;
+		} else {
+			return new Unit(op, first, second) ;
+		}
+	}
+
+	private static ArrayList<BaseUnit> append(ArrayList<BaseUnit> list, BaseUnit unit) {
+		list.add(unit) ;
+		return list ;
+	}
+
+	/**
+	 * @param exp exponents indexed as in BaseUnit.Dimension.TYPES
+	 * @return the exponents packed into a dimension key
+	 * @throws ArithmeticException if an exponent is larger than MAX_EXPONENT or smaller than -MAX_EXPONENT
+	 */
+	private static long packDimensions(int[] exp) {
+		long key = 0 ;
+		for(int i=0; i<exp.length; i++) {
+			if(exp[i] > MAX_EXPONENT || exp[i] < -MAX_EXPONENT)
+				throw new ArithmeticException("Dimension " + BaseUnit.Dimension.TYPES[i] + " raised to power " + exp[i] +
+						" is outside of +/-" + MAX_EXPONENT) ;
+			key |= (exp[i] & EXPONENT_MASK) << (i * EXPONENT_BITS) ;
+		}
+		return key ;
+	}
+
+	private static int getExponentAt(long dimensionKey, int index) {
+		return (int)((dimensionKey << (64 - EXPONENT_BITS * (index + 1))) >> (64 - EXPONENT_BITS)) ;
+	}
+
+	private static double computeUnitType(long dimensionKey) {
+		double num = 1.0 ;
+		double den = 1.0 ;
+		for(int i=0; i<BaseUnit.Dimension.COUNT; i++) {
+			int exp = getExponentAt(dimensionKey, i) ;
+			for(int j=0; j<exp; j++)
+				num *= BaseUnit.Dimension.TYPES[i] ;
+			for(int j=0; j>exp; j--)
+				den *= BaseUnit.Dimension.TYPES[i] ;
+		}
+		return num / den ;
+	}
+
+	/**
+	 * @return the numerator and denominator of this unit, building them if this unit is the result of an operation.
+	 */
+	private Terms getTerms() {
+		Object current = terms ;
+		if(current instanceof Terms) {
+			return (Terms)current ;
+		} else {
+			Terms built = buildTerms((Pending)current) ;
+			terms = built ;
+			return built ;
+		}
+	}
+
+	/**
+	 * @return the BaseUnit this unit consists of, null if it is not made of exactly one BaseUnit.
+	 */
+	BaseUnit getBaseUnit() {
+		Terms t = getTerms() ;
+		return t.numerator.size() == 1 && t.denominator.isEmpty() ? t.numerator.get(0) : null ;
+	}
+
+	private static Terms buildTerms(Pending pending) {
+		Terms first = pending.first.getTerms() ;
+		ArrayList<BaseUnit> newNumerator ;
+		ArrayList<BaseUnit> newDenominator ;
+		if(pending.op == OP_INVERT) {
+			newNumerator = new ArrayList<BaseUnit>(first.denominator) ;
+			newDenominator = new ArrayList<BaseUnit>(first.numerator) ;
+		} else {
+			Terms second = pending.second.getTerms() ;
+			newNumerator = new ArrayList<BaseUnit>(first.numerator) ;
+			newDenominator = new ArrayList<BaseUnit>(first.denominator) ;
+			if(pending.op == OP_MULTIPLY) {
+				newNumerator.addAll(second.numerator) ;
+				newDenominator.addAll(second.denominator) ;
+			} else {
+				newNumerator.addAll(second.denominator) ;
+				newDenominator.addAll(second.numerator) ;
+			}
+		}
+		simplify(newNumerator, newDenominator) ;
+		return new Terms(newNumerator, newDenominator) ;
+	}
+
 	/**
 	 * @return A copy of the numerator units
 	 */
 	public ArrayList<BaseUnit> getNumerator() {
-		return new ArrayList<BaseUnit>(numerator) ;
+		return new ArrayList<BaseUnit>(getTerms().numerator) ;
 	}
 
 	/**
 	 * @return A copy of the denominator units
 	 */
 	public ArrayList<BaseUnit> getDenominator() {
-		return new ArrayList<BaseUnit>(denominator) ;
+		return new ArrayList<BaseUnit>(getTerms().denominator) ;
 	}
 
 	/**
 	 * @return the value needed to return a number in this unit to SI units
 	 */
 	public double getConversionValue() {
-		double value = 1 ;
-		for(int i=0; i<numerator.size(); i++) {
-			value *= numerator.get(i).getBaseUnitRatio() ;
-		}
-		for(int i=0; i<denominator.size(); i++) {
-			value /= denominator.get(i).getBaseUnitRatio() ;
-		}
+		return conversionValue ;
+	}
 
-		return value ;
+	/**
+	 * @return the value added after multiplying a number in this unit by getConversionValue() to get its SI value. Non-zero only
+	 * for units of a single BaseUnit with an offset, such as degrees Celcius (273.15).
+	 */
+	public double getOffset() {
+		return offset ;
 	}
 
 	/**
-	 * @return the double value unique to a unit with this combination of dimensions.
+	 * @return a unit identical to this one but without an offset, describing differences between values in this unit (e.g.
+	 * a difference of 1 degree Celcius). This unit if it has no offset.
 	 */
-	public double getUnitType() {
-		double value = 1.0 ;
-		for(int i=0; i<numerator.size(); i++) {
-			value *= (double)numerator.get(i).getUnitType() ;
-		}
-		for(int i=0; i<denominator.size(); i++) {
-			value /= (double)denominator.get(i).getUnitType() ;
+	public Unit getDeltaUnit() {
+		if(offset == 0) {
+			return this ;
+		} else {
+			//the SI BaseUnit times the ratio, so that encode() and valueOf() keep it a difference rather than an absolute value
+			BaseUnit b = getTerms().numerator.get(0) ;
+			BaseUnit si = getSIUnitOrSelf(b) ;
+			Unit delta ;
+			if(si.getBaseUnitOffset() != 0)
+				delta = new Unit(this, 0, 0) ;
+			else if(b.getBaseUnitRatio() == 1)
+				delta = new Unit(new BaseUnit[] {si}) ;
+			else
+				delta = new Unit(new BaseUnit[] {si, new BaseUnit(b.getBaseUnitRatio())}) ;
+			delta.setName(this.getName()) ;
+			delta.setShort(this.getShortName()) ;
+			return delta ;
 		}
+	}
+
+	/**
+	 * @return the double value unique to a unit with this combination of dimensions. Kept for compatibility, use
+	 * getDimensionKey() to compare dimensions.
+	 */
+	public double getUnitType() {
+		return unitType ;
+	}
 
-		return value ;
+	/**
+	 * @return a key unique to a unit with this combination of dimensions, holding the power of each BaseUnit.Dimension as a
+	 * signed 4-bit value. Two units can be converted between if and only if their keys are equal.
+	 */
+	public long getDimensionKey() {
+		return dimensionKey ;
 	}
 
 	/**
-	 * Called on any constructor with numerator and denominator units. Cancels units that are the same in numerator and denominator.
+	 * @param dimensionType one of the BaseUnit.Dimension TYPE_ constants.
+	 * @return the power this unit raises the given dimension to (e.g. -2 for TYPE_TIME in m/s^2).
 	 */
-	private void simplify() {
-		double ratio = this.getRatio() ;
-		this.stripRatiosInSitu() ;
+	public int getExponent(int dimensionType) {
+		for(int i=0; i<BaseUnit.Dimension.TYPES.length; i++) {
+			if(BaseUnit.Dimension.TYPES[i] == dimensionType)
+				return getExponentAt(dimensionKey, i) ;
+		}
+		return 0 ;
+	}
+
+	/**
+	 * Combines all ratios into a single ratio in the numerator and cancels units that are the same in numerator and denominator.
+	 * Used on any constructor with numerator and denominator units.
+	 */
+	private static void simplify(ArrayList<BaseUnit> numerator, ArrayList<BaseUnit> denominator) {
+		double ratio = getRatio(numerator, denominator) ;
+		stripRatiosInSitu(numerator) ;
+		stripRatiosInSitu(denominator) ;
 		if(ratio != 1) {
 			numerator.add(new BaseUnit(ratio)) ;
 		}
-		this.simplifyUnits() ;
+		simplifyUnits(numerator, denominator) ;
 	}
 
 
 	/**
-	 *  Recursive element of simplify(). For all BaseUnits in the numerator, check to see if there is an identical BaseUnit in the denominator.
-	 *  if so, delete both, simplify again.
+	 *  Element of simplify(). For all BaseUnits in the numerator, check to see if there is an identical BaseUnit in the denominator.
+	 *  if so, delete both.
 	 */
-	private void simplifyUnits() {
-
-		for(int i=0; i<numerator.size(); i++) {
-			if(denominator.contains(numerator.get(i))) {
-				denominator.remove(numerator.get(i)) ;
+	private static void simplifyUnits(ArrayList<BaseUnit> numerator, ArrayList<BaseUnit> denominator) {
+		int i = 0 ;
+		while(i < numerator.size()) {
+			if(denominator.remove(numerator.get(i))) {
 				numerator.remove(i) ;
-				this.simplifyUnits() ;
+			} else {
+				i++ ;
 			}
 		}
 	}
@@ -231,6 +549,11 @@ public class Unit extends UnitAlias {
 	 * @return the dimensionless ratio associated with this unit.
 	 */
 	public double getRatio() {
+		Terms t = getTerms() ;
+		return getRatio(t.numerator, t.denominator) ;
+	}
+
+	private static double getRatio(ArrayList<BaseUnit> numerator, ArrayList<BaseUnit> denominator) {
 		double ratioValue = 1 ;
 		for(int i=0; i<numerator.size(); i++) {
 			if(numerator.get(i).getUnitType() == BaseUnit.RATIO.getUnitType()) {
@@ -250,6 +573,7 @@ public class Unit extends UnitAlias {
 	 * @return true if the unit contains a single ratio in the numerator that is not 1. false otherwise.
 	 */
 	public boolean isRatio() {
+		ArrayList<BaseUnit> numerator = getTerms().numerator ;
 		if(numerator.size() == 1 && numerator.get(0).getUnitType() == BaseUnit.RATIO.getUnitType()) {
 			return true ;
 		} else {
@@ -261,48 +585,31 @@ public class Unit extends UnitAlias {
 	 * @return a unit identical to the current unit without any dimensionless ratios.
 	 */
 	public Unit stripRatios() {
-		ArrayList<BaseUnit> newNum = new ArrayList<BaseUnit>() ;
-		ArrayList<BaseUnit> newDen = new ArrayList<BaseUnit>() ;
-
-		for(int i=0; i<numerator.size(); i++) {
-			if(numerator.get(i).getUnitType() != BaseUnit.RATIO.getUnitType()) {
-				newNum.add(numerator.get(i)) ;
-			}
-		}
-		for(int i=0; i<denominator.size(); i++) {
-			if(denominator.get(i).getUnitType() != BaseUnit.RATIO.getUnitType()) {
-				newDen.add(denominator.get(i)) ;
-			}
-		}
-		return new Unit(newNum, newDen) ;
+		Terms t = getTerms() ;
+		ArrayList<BaseUnit> newNum = new ArrayList<BaseUnit>(t.numerator) ;
+		ArrayList<BaseUnit> newDen = new ArrayList<BaseUnit>(t.denominator) ;
+		stripRatiosInSitu(newNum) ;
+		stripRatiosInSitu(newDen) ;
+		return new Unit(newNum, newDen, true) ;
 	}
 
 	/**
-	 * Strips any dimensionles ratios from the numerator and denominator. Used in simplify() in conjunction with getRatio() to
+	 * Strips any dimensionles ratios from a list of units. Used in simplify() in conjunction with getRatio() to
 	 * simplify any ratios into a single ratio in the numerator.
 	 */
-	private void stripRatiosInSitu() {
-		ArrayList<BaseUnit> newNum = new ArrayList<BaseUnit>() ;
-		ArrayList<BaseUnit> newDen = new ArrayList<BaseUnit>() ;
-		for(int i=0; i<numerator.size(); i++) {
-			if(numerator.get(i).getUnitType() != BaseUnit.RATIO.getUnitType()) {
-				newNum.add(numerator.get(i)) ;
-			}
+	private static void stripRatiosInSitu(ArrayList<BaseUnit> units) {
+		Iterator<BaseUnit> i = units.iterator() ;
+		while(i.hasNext()) {
+			if(i.next().getUnitType() == BaseUnit.RATIO.getUnitType())
+				i.remove() ;
 		}
-		for(int i=0; i<denominator.size(); i++) {
-			if(denominator.get(i).getUnitType() != BaseUnit.RATIO.getUnitType()) {
-				newDen.add(denominator.get(i)) ;
-			}
-		}
-		numerator = newNum ;
-		denominator = newDen ;
 	}
 
 	public boolean equals(Object otherObject) {
 		if(otherObject instanceof Unit) {
 			Unit otherUnit = (Unit)otherObject ;
-			if(otherUnit.getConversionValue() == this.getConversionValue() &&
-					this.getUnitType() == otherUnit.getUnitType()) {
+			if(otherUnit.conversionValue == this.conversionValue && otherUnit.offset == this.offset &&
+					this.dimensionKey == otherUnit.dimensionKey) {
 				return true ;
 			} else {
 				return false ;
@@ -312,27 +619,81 @@ public class Unit extends UnitAlias {
 		}
 	}
 
+	public int hashCode() {
+		long bits = conversionValue == 0 ? 0 : Double.doubleToLongBits(conversionValue) ;
+		long offsetBits = offset == 0 ? 0 : Double.doubleToLongBits(offset) ;
+		return 31 * (31 * (int)(bits ^ (bits >>> 32)) + (int)(offsetBits ^ (offsetBits >>> 32))) +
+				(int)(dimensionKey ^ (dimensionKey >>> 32)) ;
+	}
+
+	/**
+	 * @return the canonical instance equal to this unit. The canonical instance has no name or abbreviation and is shared by
+	 * all callers, similar to String.intern().
+	 */
+	public Unit intern() {
+		Unit current = canonical ;
+		if(current == null) {
+			current = UnitCache.getCanonical(this) ;
+			canonical = current ;
+		}
+		return current ;
+	}
+
+	/**
+	 * @return a small positive integer shared by all units equal to this one. The id stays the same, and forId() returns a unit
+	 * for it, for as long as any unit that has returned it is reachable; ids are never reused. 0 if this unit has a NaN
+	 * conversion value, or in the unlikely event that every id has been used.
+	 */
+	public int getId() {
+		return intern().id ;
+	}
+
+	/**
+	 * @param id a value from getId()
+	 * @return the canonical unit with that id, null if no unit has been given that id or every unit that returned it has been
+	 * garbage collected.
+	 */
+	public static Unit forId(int id) {
+		return UnitCache.getById(id) ;
+	}
+
 
 	/**
 	 * @return a unit of equivalent dimensions to the current unit, using only SI BaseUnits.
 	 */
 	public Unit getSI() {
+		return UnitCache.apply(OP_SI, this, null) ;
+	}
+
+	private Unit computeSI() {
+		Terms t = getTerms() ;
 		ArrayList<BaseUnit> newNum = new ArrayList<BaseUnit>() ;
 		ArrayList<BaseUnit> newDen = new ArrayList<BaseUnit>() ;
-		for(int i=0; i<numerator.size(); i++) {
-			newNum.add(getSIUnit(numerator.get(i).getUnitType())) ;
+		for(BaseUnit b: t.numerator) {
+			if(b.getDimensionIndex() != -1)
+				newNum.add(getSIUnitOrSelf(b)) ;
 		}
-		for(int i=0; i<denominator.size(); i++) {
-			newDen.add(getSIUnit(denominator.get(i).getUnitType())) ;
+		for(BaseUnit b: t.denominator) {
+			if(b.getDimensionIndex() != -1)
+				newDen.add(getSIUnitOrSelf(b)) ;
+		}
+		return new Unit(newNum, newDen, true) ;
+	}
+
+	private static BaseUnit getSIUnitOrSelf(BaseUnit unit) {
+		BaseUnit si = getSIUnit(unit.getUnitType()) ;
+		if(si != null) {
+			return si ;
+		} else {
+			return unit ;
 		}
-		return new Unit(newNum, newDen) ;
 	}
 
 	/**
 	 * @return a unit with the denominator of this unit in the numerator, and the numerator of this unit in the denominator.
 	 */
 	public Unit invert() {
-		return new Unit(denominator, numerator) ;
+		return UnitCache.apply(OP_INVERT, this, null) ;
 	}
 
 	/**
@@ -341,17 +702,10 @@ public class Unit extends UnitAlias {
 	 * 
 	 * @param otherUnit the Unit to mulitply this one by
 	 * @return the resulting Unit.
+	 * @throws ArithmeticException if a dimension would be raised to a power beyond +/-MAX_EXPONENT.
 	 */
 	public Unit multiplyBy(Unit otherUnit) {
-		ArrayList<BaseUnit> newNumerator = new ArrayList<BaseUnit>(numerator) ;
-		ArrayList<BaseUnit> newDenominator = new ArrayList<BaseUnit>(denominator) ;
-
-		newNumerator.addAll(otherUnit.getNumerator()) ;
-		newDenominator.addAll(otherUnit.getDenominator()) ;
-
-		Unit newUnit = new Unit(newNumerator, newDenominator) ;
-
-		return newUnit ;
+		return UnitCache.apply(OP_MULTIPLY, this, otherUnit) ;
 	}
 
 	/**
@@ -359,9 +713,22 @@ public class Unit extends UnitAlias {
 	 * 
 	 * @param otherUnit the unit to divide the current unit by.
 	 * @return the resulting unit.
+	 * @throws ArithmeticException if a dimension would be raised to a power beyond +/-MAX_EXPONENT.
 	 */
 	public Unit divideBy(Unit otherUnit) {
-		return multiplyBy(otherUnit.invert()) ;
+		return UnitCache.apply(OP_DIVIDE, this, otherUnit) ;
+	}
+
+	/**
+	 * Gets a Converter from this unit to another, checking dimensions once so that values can then be converted with a single
+	 * multiply-add. Converters are cached and shared between callers.
+	 * 
+	 * @param otherUnit the unit values should be converted to.
+	 * @return a Converter from this unit to otherUnit.
+	 * @throws UnitException if the units are of different dimensions.
+	 */
+	public Converter converterTo(Unit otherUnit) throws UnitException {
+		return UnitCache.getConverter(this, otherUnit) ;
 	}
 
 	/**
@@ -370,20 +737,22 @@ public class Unit extends UnitAlias {
 	 * 
 	 * @param number the power to raise the unit to.
 	 * @return the resulting unit.
+	 * @throws ArithmeticException if a dimension would be raised to a power beyond +/-MAX_EXPONENT.
 	 */
 	public Unit raiseToPower(int number) {
 		if(number != 0) {
-			ArrayList<BaseUnit> newNumerator = new ArrayList<BaseUnit>(numerator) ;
-			ArrayList<BaseUnit> newDenominator = new ArrayList<BaseUnit>(denominator) ;
-			for(int i=1; i<=number; i++) {
-				newNumerator.addAll(newNumerator) ;
-				newDenominator.addAll(newDenominator) ;
+			Terms t = getTerms() ;
+			ArrayList<BaseUnit> newNumerator = new ArrayList<BaseUnit>() ;
+			ArrayList<BaseUnit> newDenominator = new ArrayList<BaseUnit>() ;
+			for(int i=0; i<Math.abs(number); i++) {
+				newNumerator.addAll(t.numerator) ;
+				newDenominator.addAll(t.denominator) ;
 			}
 
 			if(number > 0) {
-				return new Unit(newNumerator, newDenominator) ;
+				return new Unit(newNumerator, newDenominator, true) ;
 			} else {
-				return new Unit(newDenominator, newNumerator) ;
+				return new Unit(newDenominator, newNumerator, true) ;
 			}
 		} else { //number == 0
 			return new Unit() ;
@@ -405,7 +774,8 @@ public class Unit extends UnitAlias {
 			Map<BaseUnit, Integer> countsNum = new HashMap<BaseUnit, Integer>() ;
 			Map<BaseUnit, Integer> countsDen = new HashMap<BaseUnit, Integer>() ;
 
-			for(BaseUnit b: numerator) {
+			Terms t = getTerms() ;
+			for(BaseUnit b: t.numerator) {
 				if(countsNum.containsKey(b)) {
 					int currentCount = countsNum.get(b) ;
 					countsNum.put(b, currentCount + 1) ;
@@ -414,12 +784,12 @@ public class Unit extends UnitAlias {
 				}
 			}
 
-			for(BaseUnit b: denominator) {
+			for(BaseUnit b: t.denominator) {
 				if(countsDen.containsKey(b)) {
-					int currentCount = countsNum.get(b) ;
-					countsNum.put(b, currentCount + 1) ;
+					int currentCount = countsDen.get(b) ;
+					countsDen.put(b, currentCount + 1) ;
 				} else {
-					countsNum.put(b, 1) ;
+					countsDen.put(b, 1) ;
 				}
 			}
 
@@ -457,15 +827,37 @@ public class Unit extends UnitAlias {
 		}
 	}
 
+	/**
+	 * @throws UnsupportedOperationException if this is a canonical instance, such as the result of multiplyBy(), which is
+	 * shared with other callers. Use Unit(String, String, Unit) for a named copy.
+	 */
+	public void setShort(String shortNm) {
+		checkNotShared() ;
+		super.setShort(shortNm) ;
+	}
+
+	protected void setName(String name) {
+		checkNotShared() ;
+		super.setName(name) ;
+	}
+
+	private void checkNotShared() {
+		if(shared)
+			throw new UnsupportedOperationException("Shared canonical units cannot be named; use new Unit(name, shortName, unit)") ;
+	}
+
 	public String toString() {
 		return this.toString(true) ;
 	}
-	
+
 	public String toString(boolean fullText) {
 		return getUnitText(this, fullText) ;
 	}
 
 	public String getHtml() {
+		Terms t = getTerms() ;
+		ArrayList<BaseUnit> numerator = t.numerator ;
+		ArrayList<BaseUnit> denominator = t.denominator ;
 		if(numerator.size() > 0 || denominator.size() > 0) {
 			ArrayList<BaseUnit> numUnits = new ArrayList<BaseUnit>() ;
 			ArrayList<Integer>numCounts = new ArrayList<Integer>() ;
@@ -528,80 +920,128 @@ public class Unit extends UnitAlias {
 	 * @return a string representation of this object that can be read by Unit.valueOf() to return a copy of this unit.
 	 */
 	public String encode() {
-		String numeratorString = UNIT_SEPARATOR ;
-		String denominatorString = UNIT_SEPARATOR ;
+		String current = encoded ;
+		if(current != null)
+			return current ;
+
+		Terms t = getTerms() ;
+		ArrayList<BaseUnit> numerator = t.numerator ;
+		ArrayList<BaseUnit> denominator = t.denominator ;
+		StringBuilder s = new StringBuilder(UNIT_SEPARATOR) ;
 		String times = "" ;
 		for(int i=0; i<numerator.size(); i++) {
-			numeratorString += times + numerator.get(i).getAbbreviation() ;
+			s.append(times).append(numerator.get(i).getAbbreviation()) ;
 			times = UNIT_SEPARATOR ;
 		}
+		s.append(FRACTION_SEPARATOR).append(UNIT_SEPARATOR) ;
 		times = "" ;
 		for(int i=0; i<denominator.size(); i++) {
-			denominatorString += times + denominator.get(i).getAbbreviation() ;
+			s.append(times).append(denominator.get(i).getAbbreviation()) ;
 			times = UNIT_SEPARATOR ;
 		}
 
-		return numeratorString + FRACTION_SEPARATOR + denominatorString ;
+		current = s.toString() ;
+		encoded = current ;
+		return current ;
+	}
 
+	/**
+	 * Parses a unit written the way people write them, such as "kg*m/s^2", "ft3/s", "km/h" or "J/(kg K)", using the
+	 * abbreviations of registered BaseUnits and the names and short names of the units in Units. Parsed expressions are cached, so
+	 * parsing the same string again is cheap. Use valueOf() for strings produced by encode().
+	 * 
+	 * @param expression
+	 * @return the unit described by expression.
+	 * @throws IllegalArgumentException if expression cannot be parsed, or raises a dimension to a power beyond +/-MAX_EXPONENT.
+	 */
+	public static Unit parse(String expression) {
+		return UnitParser.parse(expression) ;
 	}
 
 	/**
-	 * Identical to valueOf(String, BaseUnit[]), using BaseUnit.ALL as the list of BaseUnits to search.
+	 * Identical to valueOf(String, BaseUnit[]), searching BaseUnit.ALL and any BaseUnits added with BaseUnit.register(). The
+	 * abbreviations are found through a hash index rather than by comparing against each BaseUnit in turn.
 	 */
 	public static Unit valueOf(String value) {
-		return valueOf(value, BaseUnit.ALL) ;
+		return valueOf(value, BaseUnit.getRegistered(), AbbreviationIndex.getRegistered()) ;
 	}
 
 	/**
-	 * Gets a Unit object from a string generated by Unit.encode().
+	 * Gets a Unit object from a string generated by Unit.encode(). The string is scanned once, without creating a String for
+	 * each abbreviation. Abbreviations not in listOfUnits are read as ratios if they are numbers, and otherwise ignored.
 	 * 
 	 * @param value string value generated by Unit.encode().
 	 * @param listOfUnits the list of BaseUnits to search when transforming each abbreviation into
-	 * @return the Unit object represented by this String, null if it cannot be decoded.
+	 * @return the Unit object represented by this String, null if it cannot be decoded or raises a dimension to a power beyond
+	 * +/-MAX_EXPONENT.
 	 */
 	public static Unit valueOf(String value, BaseUnit[] listOfUnits) {
-		String trimmed = value.trim() ;
-		String[] parts = trimmed.split(FRACTION_SEPARATOR) ;
-		if(parts.length >= 2) {
-			ArrayList<BaseUnit> num = new ArrayList<BaseUnit>() ;
-			ArrayList<BaseUnit> den = new ArrayList<BaseUnit>() ;
-
-			String[] partsNumerator = parts[0].trim().split(UNIT_SEPARATOR) ;
-
-			for(int i=0; i<partsNumerator.length; i++) {
-				BaseUnit unit = getUnitFromArray(partsNumerator[i].trim(), listOfUnits) ;
-				if(unit != null) {
-					num.add(unit) ;
-				}
-			}
-
-			String[] partsDenominator = parts[1].substring(1).trim().split(UNIT_SEPARATOR) ;
+		return valueOf(value, listOfUnits, null) ;
+	}
 
-			for(int i=0; i<partsDenominator.length; i++) {
-				BaseUnit unit = getUnitFromArray(partsDenominator[i].trim(), listOfUnits) ;
-				if(unit != null) {
-					den.add(unit) ;
-				}
-			}
+	private static Unit valueOf(String value, BaseUnit[] listOfUnits, AbbreviationIndex index) {
+		int fraction = value.indexOf(FRACTION_SEPARATOR) ;
+		int length = value.length() ;
+		while(length > 0 && value.charAt(length - 1) <= ' ')
+			length-- ;
+		if(fraction < 0 || fraction + 1 >= length)
+			return null ;
+		int denominatorEnd = value.indexOf(FRACTION_SEPARATOR, fraction + 1) ;
+		if(denominatorEnd < 0)
+			denominatorEnd = length ;
+
+		ArrayList<BaseUnit> num = new ArrayList<BaseUnit>() ;
+		ArrayList<BaseUnit> den = new ArrayList<BaseUnit>() ;
+		addUnitsFromString(value, 0, fraction, listOfUnits, index, num) ;
+		addUnitsFromString(value, fraction + 1, denominatorEnd, listOfUnits, index, den) ;
+		try {
 			return new Unit(num, den) ;
-
-		} else {
+		} catch(ArithmeticException e) {
+			//a dimension raised beyond MAX_EXPONENT cannot be represented
 			return null ;
 		}
 	}
 
-	private static BaseUnit getUnitFromArray(String abbreviation, BaseUnit[] array) {
-		for(int i=0; i<array.length; i++) {
-			if(array[i].getAbbreviation().equals(abbreviation))
-				return array[i] ;
+	/**
+	 * Adds the BaseUnit for each UNIT_SEPARATOR-separated abbreviation between from and to to list, skipping empty or unknown
+	 * abbreviations.
+	 */
+	private static void addUnitsFromString(String value, int from, int to, BaseUnit[] listOfUnits, AbbreviationIndex index,
+			ArrayList<BaseUnit> list) {
+		char separator = UNIT_SEPARATOR.charAt(0) ;
+		int start = from ;
+		for(int i=from; i<=to; i++) {
+			if(i == to || value.charAt(i) == separator) {
+				BaseUnit unit = getUnitFromArray(value, start, i, listOfUnits, index) ;
+				if(unit != null)
+					list.add(unit) ;
+				start = i + 1 ;
+			}
 		}
+	}
 
-		try {
-			double ratioValue = new Double(abbreviation)  ;
-			return new BaseUnit(ratioValue) ;
-		} catch(NumberFormatException e) {
+	private static BaseUnit getUnitFromArray(String value, int from, int to, BaseUnit[] array, AbbreviationIndex index) {
+		while(from < to && value.charAt(from) <= ' ')
+			from++ ;
+		while(to > from && value.charAt(to - 1) <= ' ')
+			to-- ;
+		if(from == to)
+			return null ;
 
+		if(index != null) {
+			BaseUnit unit = index.get(value, from, to) ;
+			if(unit != null)
+				return unit ;
+		} else {
+			for(int i=0; i<array.length; i++) {
+				if(value.regionMatches(from, array[i].getAbbreviation(), 0, to - from) &&
+						array[i].getAbbreviation().length() == to - from)
+					return array[i] ;
+			}
 		}
+
+		if(DecimalParser.isDecimal(value, from, to))
+			return new BaseUnit(DecimalParser.parse(value, from, to)) ;
 		return null ;
 	}
 
@@ -610,7 +1050,7 @@ public class Unit extends UnitAlias {
 	 * @return a BaseUnit of type unitType that is SI.
 	 */
 	public static BaseUnit getSIUnit(int unitType) {
-		return getSIUnit(unitType, BaseUnit.ALL) ;
+		return getSIUnit(unitType, BaseUnit.getRegistered()) ;
 	}
 
 	private static BaseUnit getSIUnit(int unitType, BaseUnit[] array) {
@@ -625,7 +1065,6 @@ public class Unit extends UnitAlias {
 		if(value != null) {
 			String name = value.getName() ;
 			String shortName = value.getShortName() ;
-			String rawUnit = value.getHtml() ;
 			String outString = "" ;
 
 			UnitAlias alias = Units.getAlias(value) ;
@@ -634,6 +1073,9 @@ public class Unit extends UnitAlias {
 				shortName = alias.getShortName() ;
 			}
 
+			//only build the HTML form if it will be used
+			String rawUnit = (longName ? name != null && shortName != null : shortName != null) ? null : value.getHtml() ;
+
 			if(longName) {
 				if(name != null) {
 					outString = name ;
@@ -668,4 +1110,32 @@ public class Unit extends UnitAlias {
 		}
 	}
 	
+	/**
+	 * The numerator and denominator of a Unit. Never modified once created.
+	 */
+	private static class Terms {
+		final ArrayList<BaseUnit> numerator ;
+		final ArrayList<BaseUnit> denominator ;
+
+		Terms(ArrayList<BaseUnit> numerator, ArrayList<BaseUnit> denominator) {
+			this.numerator = numerator ;
+			this.denominator = denominator ;
+		}
+	}
+
+	/**
+	 * An operation whose numerator and denominator have not yet been built.
+	 */
+	private static class Pending {
+		final int op ;
+		final Unit first ;
+		final Unit second ;
+
+		Pending(int op, Unit first, Unit second) {
+			this.op = op ;
+			this.first = first ;
+			this.second = second ;
+		}
+	}
+
 }
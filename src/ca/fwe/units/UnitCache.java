@@ -0,0 +1,209 @@
+package ca.fwe.units;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Holds one canonical, unnamed instance of each distinct Unit (as judged by Unit.equals()) along with a small integer id, and
+ * remembers the results of operations on units by the ids of their operands. Repeated arithmetic on the same units then returns
+ * a shared instance instead of building a new Unit each time. Converter objects are cached the same way by the ids of their
+ * source and target units.
+ * <p>
+ * Canonical instances are only weakly held, so units decoded from input do not stay in memory after the last unit equal to
+ * them is dropped. Every unit keeps its canonical instance once it has asked for it (see Unit.getId()), so an id can be
+ * resolved as long as any unit that returned it is reachable. Ids are never reused, so a stale id resolves to null rather than
+ * to another unit.
+ *
+ * @author Dewey Dunnington
+ *
+ */
+class UnitCache {
+
+	static final int OP_MULTIPLY = 0 ;
+	static final int OP_DIVIDE = 1 ;
+	static final int OP_INVERT = 2 ;
+	static final int OP_SI = 3 ;
+
+	/**
+	 * Number of slots in the result cache. Must be a power of 2.
+	 */
+	private static final int RESULT_CACHE_SIZE = 4096 ;
+
+	/**
+	 * Number of slots in the converter cache. Must be a power of 2.
+	 */
+	private static final int CONVERTER_CACHE_SIZE = 1024 ;
+
+	private static final ConcurrentMap<Key, Ref> canonical = new ConcurrentHashMap<Key, Ref>() ;
+	private static final ConcurrentMap<Integer, Ref> byId = new ConcurrentHashMap<Integer, Ref>() ;
+	private static final ReferenceQueue<Unit> collected = new ReferenceQueue<Unit>() ;
+	private static int nextId = 1 ;
+
+	private static final AtomicReferenceArray<Result> results = new AtomicReferenceArray<Result>(RESULT_CACHE_SIZE) ;
+	private static final AtomicReferenceArray<Converter> converters = new AtomicReferenceArray<Converter>(CONVERTER_CACHE_SIZE) ;
+
+	private UnitCache() {}
+
+	/**
+	 * @param unit any unit
+	 * @return the canonical instance equal to unit, registering a copy of unit if there is none yet. Units with a NaN
+	 * conversion value are never equal to anything and are returned as is, as are all new units once every id has been used.
+	 */
+	static Unit getCanonical(Unit unit) {
+		if(Double.isNaN(unit.getConversionValue()))
+			return unit ;
+		Ref ref = canonical.get(new Key(unit)) ;
+		Unit found = ref != null ? ref.get() : null ;
+		return found != null ? found : register(unit) ;
+	}
+
+	private static synchronized Unit register(Unit unit) {
+		expunge() ;
+		Key key = new Key(unit) ;
+		Ref ref = canonical.get(key) ;
+		Unit found = ref != null ? ref.get() : null ;
+		if(found != null)
+			return found ;
+		if(nextId == Integer.MAX_VALUE)
+			return unit ;
+
+		int id = nextId++ ;
+		Unit copy = unit.canonicalCopy(id) ;
+		ref = new Ref(copy, key, id) ;
+		canonical.put(key, ref) ;
+		byId.put(id, ref) ;
+		return copy ;
+	}
+
+	/**
+	 * Removes the entries of canonical units that have been garbage collected.
+	 */
+	private static void expunge() {
+		Ref ref ;
+		while((ref = (Ref)collected.poll()) != null) {
+			canonical.remove(ref.key, ref) ;
+			byId.remove(ref.id, ref) ;
+		}
+	}
+
+	/**
+	 * @param id a value from Unit.getId()
+	 * @return the canonical unit with that id, null if no unit has been given that id or it has been garbage collected.
+	 */
+	static Unit getById(int id) {
+		Ref ref = id > 0 ? byId.get(id) : null ;
+		return ref != null ? ref.get() : null ;
+	}
+
+	/**
+	 * @param op one of OP_MULTIPLY, OP_DIVIDE, OP_INVERT or OP_SI
+	 * @param first
+	 * @param second null for OP_INVERT and OP_SI
+	 * @return the canonical result of the operation, from the cache if it has been computed before.
+	 */
+	static Unit apply(int op, Unit first, Unit second) {
+		int firstId = first.getId() ;
+		int secondId = second != null ? second.getId() : 0 ;
+		if(firstId == 0 || (second != null && secondId == 0)) {
+			return Unit.compute(op, first, second) ;
+		}
+
+		long key = ((long)op << 62) | ((long)firstId << 31) | secondId ;
+		int slot = slot(key, RESULT_CACHE_SIZE) ;
+		Result cached = results.get(slot) ;
+		if(cached != null && cached.key == key) {
+			return cached.unit ;
+		} else {
+			Unit result = getCanonical(Unit.compute(op, first, second)) ;
+			results.set(slot, new Result(key, result)) ;
+			return result ;
+		}
+	}
+
+	/**
+	 * @param source
+	 * @param target
+	 * @return a Converter between the canonical instances of source and target, from the cache if one has been created before.
+	 * @throws UnitException if the units are of different dimensions.
+	 */
+	static Converter getConverter(Unit source, Unit target) throws UnitException {
+		int sourceId = source.getId() ;
+		int targetId = target.getId() ;
+		if(sourceId == 0 || targetId == 0) {
+			return new Converter(source, target) ;
+		}
+
+		int slot = slot(((long)sourceId << 31) | targetId, CONVERTER_CACHE_SIZE) ;
+		Converter cached = converters.get(slot) ;
+		if(cached != null && cached.getSource().getId() == sourceId && cached.getTarget().getId() == targetId) {
+			return cached ;
+		} else {
+			Converter converter = new Converter(getById(sourceId), getById(targetId)) ;
+			converters.set(slot, converter) ;
+			return converter ;
+		}
+	}
+
+	private static int slot(long key, int cacheSize) {
+		long h = key * 0x9E3779B97F4A7C15L ;
+		return (int)(h >>> 40) & (cacheSize - 1) ;
+	}
+
+	/**
+	 * The fields Unit.equals() compares, so that the table of canonical units does not hold the units themselves.
+	 */
+	private static class Key {
+		final long dimensionKey ;
+		final double conversionValue ;
+		final double offset ;
+		final int hash ;
+
+		Key(Unit unit) {
+			this.dimensionKey = unit.getDimensionKey() ;
+			this.conversionValue = unit.getConversionValue() ;
+			this.offset = unit.getOffset() ;
+			this.hash = unit.hashCode() ;
+		}
+
+		public boolean equals(Object otherObject) {
+			if(otherObject instanceof Key) {
+				Key other = (Key)otherObject ;
+				return other.conversionValue == conversionValue && other.offset == offset && other.dimensionKey == dimensionKey ;
+			} else {
+				return false ;
+			}
+		}
+
+		public int hashCode() {
+			return hash ;
+		}
+	}
+
+	/**
+	 * A weak reference to a canonical unit, remembering where it is stored so that it can be removed once collected.
+	 */
+	private static class Ref extends WeakReference<Unit> {
+		final Key key ;
+		final int id ;
+
+		Ref(Unit unit, Key key, int id) {
+			super(unit, collected) ;
+			this.key = key ;
+			this.id = id ;
+		}
+	}
+
+	private static class Result {
+		final long key ;
+		final Unit unit ;
+
+		Result(long key, Unit unit) {
+			this.key = key ;
+			this.unit = unit ;
+		}
+	}
+
+}
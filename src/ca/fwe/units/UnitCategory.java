@@ -10,15 +10,24 @@ public class UnitCategory {
 
 	private String name ;
 	private double unitType ;
+	private long dimensionKey ;
 	
+	/**
+	 * Creates a category that can only be matched by its unit type. getDimensionKey() returns Unit.UNKNOWN_DIMENSION_KEY.
+	 * 
+	 * @param typeName
+	 * @param typeValue a value from Unit.getUnitType()
+	 */
 	public UnitCategory(String typeName, double typeValue) {
 		this.name = typeName ;
 		this.unitType = typeValue ;
+		this.dimensionKey = Unit.UNKNOWN_DIMENSION_KEY ;
 	}
 	
 	public UnitCategory(String typeName, Unit unit) {
 		this.name = typeName ;
 		this.unitType = unit.getUnitType() ;
+		this.dimensionKey = unit.getDimensionKey() ;
 	}
 
 	/**
@@ -34,6 +43,14 @@ public class UnitCategory {
 	public double getUnitType() {
 		return unitType;
 	}
+
+	/**
+	 * @return the key from Unit.getDimensionKey() for units in this category, Unit.UNKNOWN_DIMENSION_KEY if the category was
+	 * created from a unit type.
+	 */
+	public long getDimensionKey() {
+		return dimensionKey;
+	}
 	
 	public String toString() {
 		return this.getName() ;
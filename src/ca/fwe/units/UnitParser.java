@@ -0,0 +1,301 @@
+package ca.fwe.units;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses unit expressions written the way people write them, such as "kg*m/s^2", "ft3/s", "km/h", "J/(kg K)" or "Metres per
+ * second", for Unit.parse(). The grammar is:
+ * <pre>
+ * product := power (('*' | '.' | middle dot | whitespace | '/') power)*
+ * power   := primary (('^' | '**') integer | integer)?
+ * primary := symbol | number | '(' product ')'
+ * </pre>
+ * Operators are applied left to right, so "W/m/K" is W/(m*K). A trailing integer may only follow a symbol ("ft3"). Symbols are
+ * resolved against the short names of Units and the abbreviations of registered BaseUnits, the long names of both ignoring case, an SI
+ * prefix followed by a short name or abbreviation ("mV", "GW", "us"), short names of three or more letters ignoring case
+ * ("cfs"), and finally long names with a plural 's'. An expression
+ * that is exactly the name or short name of a unit in Units, such as "deg C", returns that unit.
+ * <p>
+ * Parsed units are kept in a bounded least-recently-used cache keyed by the expression, so parsing the same string again is a
+ * single hash lookup.
+ *
+ * @author Dewey Dunnington
+ *
+ */
+class UnitParser {
+
+	/**
+	 * Number of parsed expressions kept in the cache.
+	 */
+	private static final int CACHE_SIZE = 512 ;
+
+	private static final String[] PREFIXES = {"da", "Y", "Z", "E", "P", "T", "G", "M", "k", "h", "d", "c", "m", "u", "\u00b5",
+		"n", "p", "f", "a"} ;
+	private static final double[] PREFIX_VALUES = {1e1, 1e24, 1e21, 1e18, 1e15, 1e12, 1e9, 1e6, 1e3, 1e2, 1e-1, 1e-2, 1e-3, 1e-6,
+		1e-6, 1e-9, 1e-12, 1e-15, 1e-18} ;
+
+	private static final Map<String, Unit> cache = new LinkedHashMap<String, Unit>(CACHE_SIZE * 2, 0.75f, true) {
+		private static final long serialVersionUID = 1L ;
+
+		protected boolean removeEldestEntry(Map.Entry<String, Unit> eldest) {
+			return size() > CACHE_SIZE ;
+		}
+	} ;
+
+	private static volatile Symbols current ;
+
+	private final String text ;
+	private final Symbols table ;
+	private int position = 0 ;
+
+	private UnitParser(String text, Symbols table) {
+		this.text = text ;
+		this.table = table ;
+	}
+
+	/**
+	 * @param expression
+	 * @return the unit described by expression.
+	 * @throws IllegalArgumentException if expression cannot be parsed, or raises a dimension to a power beyond
+	 * +/-Unit.MAX_EXPONENT.
+	 */
+	static Unit parse(String expression) {
+		Symbols table = symbols() ;
+		synchronized(cache) {
+			Unit cached = cache.get(expression) ;
+			if(cached != null)
+				return cached ;
+		}
+		UnitParser parser = new UnitParser(expression, table) ;
+		Unit parsed ;
+		try {
+			parsed = parser.parse() ;
+		} catch(ArithmeticException e) {
+			throw parser.error(e.getMessage()) ;
+		}
+		synchronized(cache) {
+			cache.put(expression, parsed) ;
+		}
+		return parsed ;
+	}
+
+	private Unit parse() {
+		String trimmed = text.trim() ;
+		Unit named = table.symbols.get(trimmed) ;
+		if(named == null)
+			named = table.names.get(trimmed.toLowerCase()) ;
+		if(named != null)
+			return named ;
+
+		skipWhitespace() ;
+		if(position == text.length())
+			throw error("Empty unit expression") ;
+		Unit unit = product() ;
+		if(position < text.length())
+			throw error("Unexpected '" + text.charAt(position) + "'") ;
+		return unit ;
+	}
+
+	private Unit product() {
+		Unit unit = power() ;
+		while(true) {
+			int start = position ;
+			skipWhitespace() ;
+			if(position == text.length())
+				return unit ;
+			char c = text.charAt(position) ;
+			if(c == '/') {
+				position++ ;
+				skipWhitespace() ;
+				unit = unit.divideBy(power()) ;
+			} else if((c == '*' && !text.startsWith("**", position)) || c == '.' || c == '\u00b7' || c == '\u00d7') {
+				position++ ;
+				skipWhitespace() ;
+				unit = unit.multiplyBy(power()) ;
+			} else if(position > start && c != ')') {
+				unit = unit.multiplyBy(power()) ;
+			} else {
+				return unit ;
+			}
+		}
+	}
+
+	private Unit power() {
+		boolean symbol = position < text.length() && isSymbolChar(text.charAt(position)) ;
+		Unit unit = primary() ;
+		if(text.startsWith("^", position) || text.startsWith("**", position)) {
+			position += text.charAt(position) == '^' ? 1 : 2 ;
+			return raise(unit, integer()) ;
+		} else if(symbol && position < text.length() && isDigit(text.charAt(position))) {
+			return raise(unit, integer()) ;
+		} else {
+			return unit ;
+		}
+	}
+
+	private Unit primary() {
+		if(position == text.length())
+			throw error("Missing unit at end of expression") ;
+		char c = text.charAt(position) ;
+		if(c == '(') {
+			position++ ;
+			skipWhitespace() ;
+			Unit unit = product() ;
+			skipWhitespace() ;
+			if(position == text.length() || text.charAt(position) != ')')
+				throw error("Missing ')'") ;
+			position++ ;
+			return unit ;
+		} else if(isDigit(c) || c == '.') {
+			int start = position ;
+			while(position < text.length() && (isDigit(text.charAt(position)) || text.charAt(position) == '.'))
+				position++ ;
+			if(position < text.length() && (text.charAt(position) == 'e' || text.charAt(position) == 'E') &&
+					position + 1 < text.length() && (isDigit(text.charAt(position + 1)) || text.charAt(position + 1) == '-')) {
+				position += 2 ;
+				while(position < text.length() && isDigit(text.charAt(position)))
+					position++ ;
+			}
+			if(!DecimalParser.isDecimal(text, start, position))
+				throw error("Invalid number '" + text.substring(start, position) + "'") ;
+			double value = DecimalParser.parse(text, start, position) ;
+			return value == 1 ? new Unit() : new Unit(new BaseUnit(value)) ;
+		} else if(isSymbolChar(c)) {
+			int start = position ;
+			while(position < text.length() && isSymbolChar(text.charAt(position)))
+				position++ ;
+			String symbol = text.substring(start, position) ;
+			Unit unit = resolve(symbol) ;
+			if(unit == null) {
+				position = start ;
+				throw error("Unknown unit '" + symbol + "'") ;
+			}
+			return unit ;
+		} else {
+			throw error("Unexpected '" + c + "'") ;
+		}
+	}
+
+	private int integer() {
+		int start = position ;
+		if(position < text.length() && (text.charAt(position) == '-' || text.charAt(position) == '+'))
+			position++ ;
+		int digits = position ;
+		while(position < text.length() && isDigit(text.charAt(position)))
+			position++ ;
+		if(position == digits || position - digits > 3)
+			throw error("Invalid exponent") ;
+		return Integer.parseInt(text.substring(text.charAt(start) == '+' ? start + 1 : start, position)) ;
+	}
+
+	private Unit raise(Unit unit, int exponent) {
+		if(exponent > Unit.MAX_EXPONENT || exponent < -Unit.MAX_EXPONENT)
+			throw error("Exponent " + exponent + " is out of range") ;
+		return unit.raiseToPower(exponent) ;
+	}
+
+	/**
+	 * @return the unit named by symbol, null if it is not known.
+	 */
+	private Unit resolve(String symbol) {
+		Unit unit = table.symbols.get(symbol) ;
+		if(unit != null)
+			return unit ;
+		String lower = symbol.toLowerCase() ;
+		unit = table.names.get(lower) ;
+		if(unit != null)
+			return unit ;
+		for(int i=0; i<PREFIXES.length; i++) {
+			if(symbol.length() > PREFIXES[i].length() && symbol.startsWith(PREFIXES[i])) {
+				Unit base = table.symbols.get(symbol.substring(PREFIXES[i].length())) ;
+				if(base != null)
+					return new Unit(null, null, base, PREFIX_VALUES[i]) ;
+			}
+		}
+		unit = table.lowerCaseSymbols.get(lower) ;
+		if(unit == null && lower.length() > 3 && lower.endsWith("s"))
+			unit = table.names.get(lower.substring(0, lower.length() - 1)) ;
+		return unit ;
+	}
+
+	private void skipWhitespace() {
+		while(position < text.length() && Character.isWhitespace(text.charAt(position)))
+			position++ ;
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9' ;
+	}
+
+	private static boolean isSymbolChar(char c) {
+		return Character.isLetter(c) || c == '_' || c == '$' || c == '%' || c == '\u00b0' ;
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at position " + position + " of \"" + text + "\"") ;
+	}
+
+	/**
+	 * @return the tables of symbols and names, rebuilt (and the cache cleared) if units have been registered with Units or
+	 * BaseUnit since they were last built.
+	 */
+	private static Symbols symbols() {
+		List<Unit> units = Units.listAll() ;
+		BaseUnit[] baseUnits = BaseUnit.getRegistered() ;
+		Symbols table = current ;
+		if(table == null || table.units != units || table.baseUnits != baseUnits) {
+			table = new Symbols(units, baseUnits) ;
+			synchronized(cache) {
+				cache.clear() ;
+				current = table ;
+			}
+		}
+		return table ;
+	}
+
+	/**
+	 * Tables of symbols and names for one snapshot of the registered units.
+	 */
+	private static class Symbols {
+		final List<Unit> units ;
+		final BaseUnit[] baseUnits ;
+		final Map<String, Unit> symbols = new HashMap<String, Unit>() ;
+		final Map<String, Unit> names = new HashMap<String, Unit>() ;
+		final Map<String, Unit> lowerCaseSymbols = new HashMap<String, Unit>() ;
+
+		Symbols(List<Unit> units, BaseUnit[] baseUnits) {
+			this.units = units ;
+			this.baseUnits = baseUnits ;
+			for(Unit unit: units) {
+				if(unit.getShortName() != null && !symbols.containsKey(unit.getShortName()))
+					symbols.put(unit.getShortName(), unit) ;
+				if(unit.getName() != null && !names.containsKey(unit.getName().toLowerCase()))
+					names.put(unit.getName().toLowerCase(), unit) ;
+			}
+			for(BaseUnit base: baseUnits) {
+				Unit unit = new Unit(base) ;
+				if(!symbols.containsKey(base.getAbbreviation()))
+					symbols.put(base.getAbbreviation(), unit) ;
+				if(base.getName().length() > 0 && !names.containsKey(base.getName().toLowerCase()))
+					names.put(base.getName().toLowerCase(), unit) ;
+			}
+			alias("h", new Unit(BaseUnit.HOUR)) ;
+			alias("sec", new Unit(BaseUnit.SECOND)) ;
+			alias("l", symbols.get("L")) ;
+			for(Map.Entry<String, Unit> e: symbols.entrySet()) {
+				String lower = e.getKey().toLowerCase() ;
+				if(lower.length() >= 3 && !lowerCaseSymbols.containsKey(lower))
+					lowerCaseSymbols.put(lower, e.getValue()) ;
+			}
+		}
+
+		private void alias(String symbol, Unit unit) {
+			if(unit != null && !symbols.containsKey(symbol))
+				symbols.put(symbol, unit) ;
+		}
+	}
+
+}
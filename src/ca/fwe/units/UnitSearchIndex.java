@@ -0,0 +1,175 @@
+package ca.fwe.units;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A case-folded n-gram index of the names, short names and BaseUnit abbreviations of a list of units, used by Units.filter(String)
+ * and Units.search(). Every substring of one to three characters of each unit's text is mapped to the sorted positions of the
+ * units containing it, so a query only examines units that contain its rarest n-gram. Matches are ranked so that units whose
+ * short name or name is the query come first, then those that start with it, then those with a word starting with it, then any
+ * other unit containing it, each group in registration order.
+ * <p>
+ * An index is immutable and built once for each snapshot of the Units registry.
+ *
+ * @author Dewey Dunnington
+ *
+ */
+class UnitSearchIndex {
+
+	private static final int MAX_GRAM = 3 ;
+
+	private static final int EXACT = 0 ;
+	private static final int SHORT_PREFIX = 1 ;
+	private static final int NAME_PREFIX = 2 ;
+	private static final int WORD_PREFIX = 3 ;
+	private static final int CONTAINS = 4 ;
+
+	private static final int[] NONE = new int[0] ;
+
+	private final Unit[] units ;
+	private final String[] names ;
+	private final String[] shortNames ;
+	private final String[] texts ;
+	private final Map<String, int[]> grams = new HashMap<String, int[]>() ;
+
+	/**
+	 * @param list the units to index, in the order ties are ranked.
+	 */
+	UnitSearchIndex(List<Unit> list) {
+		int n = list.size() ;
+		units = list.toArray(new Unit[n]) ;
+		names = new String[n] ;
+		shortNames = new String[n] ;
+		texts = new String[n] ;
+		Map<String, int[]> building = new HashMap<String, int[]>() ;
+		for(int i=0; i<n; i++) {
+			Unit u = units[i] ;
+			BaseUnit base = u.getBaseUnit() ;
+			names[i] = fold(u.getName() == null && base != null ? base.getName() : u.getName()) ;
+			shortNames[i] = fold(u.getShortName() == null && base != null ? base.getAbbreviation() : u.getShortName()) ;
+			texts[i] = fold(u.toString()) + ' ' + shortNames[i] + ' ' + fold(u.encode().replace('&', ' ').replace('/', ' ')) ;
+			addGrams(building, texts[i], i) ;
+		}
+		for(Map.Entry<String, int[]> e: building.entrySet()) {
+			int[] posting = e.getValue() ;
+			int size = posting[0] ;
+			int[] trimmed = new int[size] ;
+			System.arraycopy(posting, 1, trimmed, 0, size) ;
+			grams.put(e.getKey(), trimmed) ;
+		}
+	}
+
+	/**
+	 * @param query text to look for, in any case.
+	 * @param limit the largest number of units to return.
+	 * @return an unmodifiable list of at most limit units whose text contains query, best matches first. Every unit matches an
+	 * empty query.
+	 */
+	List<Unit> search(String query, int limit) {
+		if(limit <= 0)
+			return Collections.<Unit>emptyList() ;
+		String q = fold(query).trim() ;
+		int[] candidates = candidates(q) ;
+		int count = candidates == null ? units.length : candidates.length ;
+
+		//bounded insertion into results, ordered by rank then position
+		int[] best = new int[Math.min(limit, count)] ;
+		int[] bestRank = new int[best.length] ;
+		int size = 0 ;
+		for(int c=0; c<count; c++) {
+			int i = candidates == null ? c : candidates[c] ;
+			int rank = rank(q, i) ;
+			if(rank < 0 || (size == best.length && rank >= bestRank[size - 1]))
+				continue ;
+			int j = size == best.length ? size - 1 : size++ ;
+			while(j > 0 && bestRank[j - 1] > rank) {
+				best[j] = best[j - 1] ;
+				bestRank[j] = bestRank[j - 1] ;
+				j-- ;
+			}
+			best[j] = i ;
+			bestRank[j] = rank ;
+		}
+
+		ArrayList<Unit> out = new ArrayList<Unit>(size) ;
+		for(int i=0; i<size; i++) {
+			out.add(units[best[i]]) ;
+		}
+		return Collections.unmodifiableList(out) ;
+	}
+
+	/**
+	 * @return the sorted positions of the units that may contain q, or null if every unit may.
+	 */
+	private int[] candidates(String q) {
+		if(q.length() == 0)
+			return null ;
+		int[] smallest = null ;
+		for(int i=0; i + Math.min(MAX_GRAM, q.length()) <= q.length(); i++) {
+			int[] posting = grams.get(q.substring(i, i + Math.min(MAX_GRAM, q.length()))) ;
+			if(posting == null)
+				return NONE ;
+			if(smallest == null || posting.length < smallest.length)
+				smallest = posting ;
+		}
+		return smallest ;
+	}
+
+	/**
+	 * @return the rank of the unit at position i for q, -1 if it does not match.
+	 */
+	private int rank(String q, int i) {
+		if(q.length() == 0)
+			return CONTAINS ;
+		if(q.equals(shortNames[i]) || q.equals(names[i]))
+			return EXACT ;
+		if(shortNames[i].startsWith(q))
+			return SHORT_PREFIX ;
+		if(names[i].startsWith(q))
+			return NAME_PREFIX ;
+		String text = texts[i] ;
+		int at = text.indexOf(q) ;
+		if(at < 0)
+			return -1 ;
+		while(at >= 0) {
+			if(at == 0 || !Character.isLetterOrDigit(text.charAt(at - 1)))
+				return WORD_PREFIX ;
+			at = text.indexOf(q, at + 1) ;
+		}
+		return CONTAINS ;
+	}
+
+	private static void addGrams(Map<String, int[]> building, String text, int position) {
+		for(int length=1; length<=MAX_GRAM; length++) {
+			for(int start=0; start + length <= text.length(); start++) {
+				String gram = text.substring(start, start + length) ;
+				int[] posting = building.get(gram) ;
+				if(posting == null) {
+					posting = new int[5] ;
+					building.put(gram, posting) ;
+				}
+				//posting[0] is the number of positions that follow it
+				int size = posting[0] ;
+				if(size > 0 && posting[size] == position)
+					continue ;
+				if(size + 1 == posting.length) {
+					int[] grown = new int[posting.length * 2] ;
+					System.arraycopy(posting, 0, grown, 0, posting.length) ;
+					posting = grown ;
+					building.put(gram, posting) ;
+				}
+				posting[size + 1] = position ;
+				posting[0] = size + 1 ;
+			}
+		}
+	}
+
+	private static String fold(String s) {
+		return s == null ? "" : s.toLowerCase() ;
+	}
+
+}
@@ -1,12 +1,23 @@
 package ca.fwe.units;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 
 /**
  * @author Dewey Dunnington
  * 
  * A library of units, providing units plus a method of getting labels for units, as well as filtering units by type.
+ * Applications may add their own units and categories with register(), e.g. for units of the Dimension.TYPE_USER dimensions.
+ * <p>
+ * The registered units and categories, along with hash indexes of aliases, categories and lists of units of the same dimensions,
+ * are held in an immutable snapshot that is replaced whenever something is registered. Lookups therefore take no lock and
+ * always see a complete registry. The lists returned by listAll(), listCategories(), listByType(), filter(Unit) and search() are
+ * shared and cannot be modified; getAll(), getCategories(), filter(double) and filter(String) keep returning a new ArrayList for
+ * existing callers.
  *
  */
 public class Units {
@@ -79,6 +90,14 @@ public class Units {
 		public static final Unit[] ALL = {SECONDS, MINUTES, HOURS, DAYS, WEEKS, YEARS} ;
 	}
 
+	public static class temperature {
+		public static final Unit KELVIN = new Unit("Kelvin", "K", BaseUnit.KELVIN) ;
+		public static final Unit DEGREES_CELCIUS = new Unit("Degrees Celcius", "deg C", BaseUnit.DEGREES_CELCIUS) ;
+		public static final Unit DEGREES_FARENHEIGHT = new Unit("Degrees Farenheight", "deg F", BaseUnit.DEGREES_FARENHEIGHT) ;
+
+		public static final Unit[] ALL = {KELVIN, DEGREES_CELCIUS, DEGREES_FARENHEIGHT} ;
+	}
+
 	public static class velocity {
 		public static final Unit METRES_PER_SECOND = new Unit("Metres per second", null, new BaseUnit[] {BaseUnit.METRE}, new BaseUnit[] {BaseUnit.SECOND}) ;
 		public static final Unit KILOMETRES_PER_HOUR = new Unit("Kilometres per hour", null, new BaseUnit[] {BaseUnit.KILOMETRE}, new BaseUnit[] {BaseUnit.HOUR}) ;
@@ -245,41 +264,98 @@ public class Units {
 		public static final Unit[] ALL = {COULOMB} ;
 	}
 	
-	private static ArrayList<Unit> ALL ;
-	private static ArrayList<UnitCategory> cat ;
+	private static volatile Registry registry ;
 
 	/**
-	 * @return a list of all UnitCategory objects contained in this library.
+	 * @return the current snapshot of the registry, creating it from the units defined in this class the first time.
 	 */
-	public static ArrayList<UnitCategory> getCategories() {
-		if(cat == null) {
-			cat = new ArrayList<UnitCategory>() ;
-
-			cat.add(new UnitCategory("Length", length.METRES)) ;
-			cat.add(new UnitCategory("Area", area.SQUARE_METRES)) ;
-			cat.add(new UnitCategory("Volume", volume.CUBIC_METRES)) ;
-			cat.add(new UnitCategory("Time", time.SECONDS)) ;
-			cat.add(new UnitCategory("Ratio", ratio.RATIO)) ;
-			cat.add(new UnitCategory("Velocity", velocity.METRES_PER_SECOND)) ;
-			cat.add(new UnitCategory("Accelleration", accelleration.METRES_PER_SECOND_SQUARED)) ;
-			cat.add(new UnitCategory("Mass", mass.KILOGRAMS)) ;
-			cat.add(new UnitCategory("Density", density.KG_PER_CUBIC_METRE)) ;
-			cat.add(new UnitCategory("Force", force.NEWTON)) ;
-			cat.add(new UnitCategory("Volume Flux (Discharge)", volume_flux.CUBIC_METRES_PER_SECOND)) ;
-			cat.add(new UnitCategory("Pressure", pressure.PASCAL)) ;
-			cat.add(new UnitCategory("Angle", angle.RADIANS)) ;
-			cat.add(new UnitCategory("Angular Velocity", angular_velocity.RADIANS_PER_SECOND)) ;
-			cat.add(new UnitCategory("Molecular Weight", molecular_weight.KILOGRAMS_PER_MOLE)) ;
-			cat.add(new UnitCategory("Frequency", frequency.HERTZ)) ;
-			cat.add(new UnitCategory("Energy", energy.JOULE)) ;
-			cat.add(new UnitCategory("Power", power.WATT)) ;
-			cat.add(new UnitCategory("Potential", potential.VOLT)) ;
-			cat.add(new UnitCategory("Current", current.AMPERE)) ;
-			cat.add(new UnitCategory("Resistance", resistance.OHM)) ;
-			cat.add(new UnitCategory("Conductivity (absolute)", absolute_conductivity.SIEMENS)) ;
-			cat.add(new UnitCategory("Conductivity", conductivity.SIEMENS_PER_METRE)) ;
-			cat.add(new UnitCategory("Charge", charge.COULOMB)) ;
+	private static Registry registry() {
+		Registry r = registry ;
+		if(r == null) {
+			synchronized(Units.class) {
+				r = registry ;
+				if(r == null) {
+					r = new Registry(builtInUnits(), builtInCategories()) ;
+					registry = r ;
+				}
+			}
+		}
+		return r ;
+	}
+
+	/**
+	 * Adds a unit to this library, making it available to getAll(), filter(), getAlias() and Unit.parse(). Safe to call from
+	 * any thread.
+	 * 
+	 * @param unit a unit, usually with a name and short name.
+	 */
+	public static void register(Unit unit) {
+		synchronized(Units.class) {
+			Registry r = registry() ;
+			ArrayList<Unit> units = new ArrayList<Unit>(r.all) ;
+			units.add(unit) ;
+			registry = new Registry(units, r.categories) ;
+		}
+	}
+
+	/**
+	 * Adds a category to this library, making it available to getCategories() and getCategory(). Safe to call from any thread.
+	 * 
+	 * @param category
+	 */
+	public static void register(UnitCategory category) {
+		synchronized(Units.class) {
+			Registry r = registry() ;
+			ArrayList<UnitCategory> categories = new ArrayList<UnitCategory>(r.categories) ;
+			categories.add(category) ;
+			registry = new Registry(r.all, categories) ;
 		}
+	}
+
+	/**
+	 * @return a new list of all UnitCategory objects contained in this library. Changing it does not change the library; use
+	 * register() to add a category.
+	 */
+	public static ArrayList<UnitCategory> getCategories() {
+		return new ArrayList<UnitCategory>(listCategories()) ;
+	}
+
+	/**
+	 * @return an unmodifiable list of all UnitCategory objects contained in this library, without copying it.
+	 */
+	public static List<UnitCategory> listCategories() {
+		return registry().categories ;
+	}
+
+	private static ArrayList<UnitCategory> builtInCategories() {
+		ArrayList<UnitCategory> cat = new ArrayList<UnitCategory>() ;
+
+		cat.add(new UnitCategory("Length", length.METRES)) ;
+		cat.add(new UnitCategory("Area", area.SQUARE_METRES)) ;
+		cat.add(new UnitCategory("Volume", volume.CUBIC_METRES)) ;
+		cat.add(new UnitCategory("Time", time.SECONDS)) ;
+		cat.add(new UnitCategory("Temperature", temperature.KELVIN)) ;
+		cat.add(new UnitCategory("Ratio", ratio.RATIO)) ;
+		cat.add(new UnitCategory("Velocity", velocity.METRES_PER_SECOND)) ;
+		cat.add(new UnitCategory("Accelleration", accelleration.METRES_PER_SECOND_SQUARED)) ;
+		cat.add(new UnitCategory("Mass", mass.KILOGRAMS)) ;
+		cat.add(new UnitCategory("Density", density.KG_PER_CUBIC_METRE)) ;
+		cat.add(new UnitCategory("Force", force.NEWTON)) ;
+		cat.add(new UnitCategory("Volume Flux (Discharge)", volume_flux.CUBIC_METRES_PER_SECOND)) ;
+		cat.add(new UnitCategory("Pressure", pressure.PASCAL)) ;
+		cat.add(new UnitCategory("Angle", angle.RADIANS)) ;
+		cat.add(new UnitCategory("Angular Velocity", angular_velocity.RADIANS_PER_SECOND)) ;
+		cat.add(new UnitCategory("Molecular Weight", molecular_weight.KILOGRAMS_PER_MOLE)) ;
+		cat.add(new UnitCategory("Frequency", frequency.HERTZ)) ;
+		cat.add(new UnitCategory("Energy", energy.JOULE)) ;
+		cat.add(new UnitCategory("Power", power.WATT)) ;
+		cat.add(new UnitCategory("Potential", potential.VOLT)) ;
+		cat.add(new UnitCategory("Current", current.AMPERE)) ;
+		cat.add(new UnitCategory("Resistance", resistance.OHM)) ;
+		cat.add(new UnitCategory("Conductivity (absolute)", absolute_conductivity.SIEMENS)) ;
+		cat.add(new UnitCategory("Conductivity", conductivity.SIEMENS_PER_METRE)) ;
+		cat.add(new UnitCategory("Charge", charge.COULOMB)) ;
+
 		return cat ;
 	}
 
@@ -288,96 +364,187 @@ public class Units {
 	 * @return a UnitCategory object of matching type, null if no category is found.
 	 */
 	public static UnitCategory getCategory(double type) {
-		if(cat == null)
-			getCategories() ;
-		for(int i=0; i<cat.size(); i++) {
-			if(cat.get(i).getUnitType() == type)
-				return cat.get(i) ;
-		}
-		return null ;
+		return registry().categoriesByType.get(type) ;
+	}
+
+	/**
+	 * @param unit any unit
+	 * @return the UnitCategory with the same dimensions as unit, null if no category is found.
+	 */
+	public static UnitCategory getCategory(Unit unit) {
+		return registry().categoriesByKey.get(unit.getDimensionKey()) ;
 	}
 
 	/**
-	 * @return an ArrayList of all units contained in this library.
+	 * @return a new ArrayList of all units contained in this library. Changing it does not change the library; use register() to
+	 * add a unit.
 	 */
 	public static final ArrayList<Unit> getAll() {
-		if(ALL == null) {
-			ALL = new ArrayList<Unit>() ;
-			
-			addArrayToAll(ratio.ALL) ;
-			addArrayToAll(length.ALL) ;
-			addArrayToAll(area.ALL) ;
-			addArrayToAll(volume.ALL) ;
-			addArrayToAll(time.ALL) ;
-			addArrayToAll(velocity.ALL) ;
-			addArrayToAll(accelleration.ALL) ;
-			addArrayToAll(mass.ALL) ;
-			addArrayToAll(density.ALL) ;
-			addArrayToAll(force.ALL) ;
-			addArrayToAll(volume_flux.ALL) ;
-			addArrayToAll(pressure.ALL) ;
-			addArrayToAll(angle.ALL) ;
-			addArrayToAll(angular_velocity.ALL) ;
-			addArrayToAll(molecular_weight.ALL) ;
-			addArrayToAll(frequency.ALL) ;
-			addArrayToAll(energy.ALL) ;
-			addArrayToAll(power.ALL) ;
-			addArrayToAll(potential.ALL) ;
-			addArrayToAll(current.ALL) ;
-			addArrayToAll(resistance.ALL) ;
-			addArrayToAll(absolute_conductivity.ALL) ;
-			addArrayToAll(conductivity.ALL) ;
-			addArrayToAll(charge.ALL) ;
-			
-		}
-		return ALL ;
+		return new ArrayList<Unit>(listAll()) ;
 	}
 
-	private static void addArrayToAll(Unit[] array) {
+	/**
+	 * @return an unmodifiable list of all units contained in this library, without copying it.
+	 */
+	public static final List<Unit> listAll() {
+		return registry().all ;
+	}
+
+	private static ArrayList<Unit> builtInUnits() {
+		ArrayList<Unit> all = new ArrayList<Unit>() ;
+
+		addArrayToList(all, ratio.ALL) ;
+		addArrayToList(all, length.ALL) ;
+		addArrayToList(all, area.ALL) ;
+		addArrayToList(all, volume.ALL) ;
+		addArrayToList(all, time.ALL) ;
+		addArrayToList(all, temperature.ALL) ;
+		addArrayToList(all, velocity.ALL) ;
+		addArrayToList(all, accelleration.ALL) ;
+		addArrayToList(all, mass.ALL) ;
+		addArrayToList(all, density.ALL) ;
+		addArrayToList(all, force.ALL) ;
+		addArrayToList(all, volume_flux.ALL) ;
+		addArrayToList(all, pressure.ALL) ;
+		addArrayToList(all, angle.ALL) ;
+		addArrayToList(all, angular_velocity.ALL) ;
+		addArrayToList(all, molecular_weight.ALL) ;
+		addArrayToList(all, frequency.ALL) ;
+		addArrayToList(all, energy.ALL) ;
+		addArrayToList(all, power.ALL) ;
+		addArrayToList(all, potential.ALL) ;
+		addArrayToList(all, current.ALL) ;
+		addArrayToList(all, resistance.ALL) ;
+		addArrayToList(all, absolute_conductivity.ALL) ;
+		addArrayToList(all, conductivity.ALL) ;
+		addArrayToList(all, charge.ALL) ;
+
+		return all ;
+	}
+
+	private static void addArrayToList(ArrayList<Unit> list, Unit[] array) {
 		for(int i=0; i<array.length; i++) {
-			ALL.add(array[i]) ;
+			list.add(array[i]) ;
 		}
 	}
 
 	/**
 	 * @param type a unique double indicating unit dimensions from Unit.getUnitType() or UnitCategory.getUnitType()
-	 * @return a list of comparable units, an empty list if no units are found.
+	 * @return a new list of comparable units, an empty list if no units are found.
 	 */
 	public static final ArrayList<Unit> filter(double type) {
-		if(ALL == null)
-			getAll() ;
-		ArrayList<Unit> out = new ArrayList<Unit>() ;
-		for(int i=0; i<ALL.size(); i++) {
-			if(ALL.get(i).getUnitType() == type)
-				out.add(ALL.get(i)) ;
-		}
-		return out ;
+		return new ArrayList<Unit>(listByType(type)) ;
+	}
+
+	/**
+	 * @param type a unique double indicating unit dimensions from Unit.getUnitType() or UnitCategory.getUnitType()
+	 * @return an unmodifiable list of comparable units without copying it, an empty list if no units are found.
+	 */
+	public static final List<Unit> listByType(double type) {
+		List<Unit> out = registry().unitsByType.get(type) ;
+		return out != null ? out : Collections.<Unit>emptyList() ;
+	}
 
+	/**
+	 * @param unit any unit
+	 * @return an unmodifiable list of units in this library with the same dimensions as unit, an empty list if no units are
+	 * found.
+	 */
+	public static final List<Unit> filter(Unit unit) {
+		List<Unit> out = registry().unitsByKey.get(unit.getDimensionKey()) ;
+		return out != null ? out : Collections.<Unit>emptyList() ;
 	}
 	
+	/**
+	 * @param text text to look for in the names, short names and base unit abbreviations of units, in any case.
+	 * @return a new list of all units in this library containing text, best matches first (see search()).
+	 */
 	public static final ArrayList<Unit> filter(String text) {
-		if(ALL == null)
-			getAll() ;
-		ArrayList<Unit> out = new ArrayList<Unit>() ;
-		for(Unit u: ALL) {
-			if(u.toString().toLowerCase().contains(text))
-				out.add(u) ;
-		}
-		return out ;
+		return new ArrayList<Unit>(search(text, Integer.MAX_VALUE)) ;
+	}
+
+	/**
+	 * Searches the units in this library for autocompletion. Units whose short name or name is text come first, then units whose
+	 * short name starts with text, then those whose name does, then those with a word starting with text, then any other unit
+	 * containing it. Ties keep registration order. The search uses an n-gram index that is built once after units are registered.
+	 * 
+	 * @param text text to look for, in any case.
+	 * @param limit the largest number of units to return.
+	 * @return an unmodifiable list of at most limit units, best matches first.
+	 */
+	public static final List<Unit> search(String text, int limit) {
+		return registry().searchIndex().search(text, limit) ;
 	}
 
 	/**
 	 * @param unit the Unit a name is requested for.
-	 * @return a UnitAlias object containing the unit name and short form.
+	 * @return a UnitAlias object containing the unit name and short form, null if no unit in this library is equal to unit.
 	 */
 	public static final UnitAlias getAlias(Unit unit) {
-		if(ALL == null)
-			getAll() ;
-		for(int i=0; i<ALL.size(); i++) {
-			if(ALL.get(i).equals(unit))
-				return ALL.get(i) ;
+		return registry().aliases.get(unit) ;
+	}
+
+	/**
+	 * An immutable snapshot of the units and categories in this library and hash indexes of them. Where several units or
+	 * categories match, the first registered is used, as it was when the lists were searched in order.
+	 */
+	private static class Registry {
+		final List<Unit> all ;
+		final List<UnitCategory> categories ;
+		final Map<Unit, Unit> aliases = new HashMap<Unit, Unit>() ;
+		final Map<Long, List<Unit>> unitsByKey = new HashMap<Long, List<Unit>>() ;
+		final Map<Double, List<Unit>> unitsByType = new HashMap<Double, List<Unit>>() ;
+		final Map<Long, UnitCategory> categoriesByKey = new HashMap<Long, UnitCategory>() ;
+		final Map<Double, UnitCategory> categoriesByType = new HashMap<Double, UnitCategory>() ;
+		private volatile UnitSearchIndex searchIndex ;
+
+		Registry(List<Unit> units, List<UnitCategory> unitCategories) {
+			all = Collections.unmodifiableList(new ArrayList<Unit>(units)) ;
+			categories = Collections.unmodifiableList(new ArrayList<UnitCategory>(unitCategories)) ;
+
+			Map<Long, List<Unit>> byKey = new HashMap<Long, List<Unit>>() ;
+			Map<Double, List<Unit>> byType = new HashMap<Double, List<Unit>>() ;
+			for(Unit u: all) {
+				if(!aliases.containsKey(u))
+					aliases.put(u, u) ;
+				addToList(byKey, u.getDimensionKey(), u) ;
+				addToList(byType, u.getUnitType(), u) ;
+			}
+			for(Map.Entry<Long, List<Unit>> e: byKey.entrySet()) {
+				unitsByKey.put(e.getKey(), Collections.unmodifiableList(e.getValue())) ;
+			}
+			for(Map.Entry<Double, List<Unit>> e: byType.entrySet()) {
+				unitsByType.put(e.getKey(), Collections.unmodifiableList(e.getValue())) ;
+			}
+
+			for(UnitCategory c: categories) {
+				if(c.getDimensionKey() != Unit.UNKNOWN_DIMENSION_KEY && !categoriesByKey.containsKey(c.getDimensionKey()))
+					categoriesByKey.put(c.getDimensionKey(), c) ;
+				if(!categoriesByType.containsKey(c.getUnitType()))
+					categoriesByType.put(c.getUnitType(), c) ;
+			}
+		}
+
+		/**
+		 * @return the search index of this snapshot, built on first use because unit names are looked up in the registry.
+		 */
+		UnitSearchIndex searchIndex() {
+			UnitSearchIndex index = searchIndex ;
+			if(index == null) {
+				index = new UnitSearchIndex(all) ;
+				searchIndex = index ;
+			}
+			return index ;
+		}
+
+		private static <K> void addToList(Map<K, List<Unit>> map, K key, Unit unit) {
+			List<Unit> list = map.get(key) ;
+			if(list == null) {
+				list = new ArrayList<Unit>() ;
+				map.put(key, list) ;
+			}
+			list.add(unit) ;
 		}
-		return null ;
 	}
 	
 }